@@ -0,0 +1,782 @@
+package knightminer.minesweeper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+import knightminer.minesweeper.MineSweeperBoard.Placement;
+
+/**
+ * Continuously saves a game so it can be recovered after a crash.
+ * <p>
+ * Each move is appended to a journal as a few bytes. Moves are collected in
+ * memory and written by a background thread, which syncs the journal to disk
+ * once enough moves are waiting or the oldest has waited {@link #SYNC_INTERVAL}
+ * milliseconds, so clicking never waits on the disk. Writes are framed with a
+ * length and checksum, so a write cut off by a crash is detected and ignored.
+ * <p>
+ * Once a journal holds enough moves, a copy of the board is written as a
+ * snapshot in the background and later moves start a new journal. Snapshots
+ * are written to a temporary file and renamed into place, so there is always
+ * a complete snapshot. Recovering loads the newest snapshot and replays the
+ * journals after it.
+ * <p>
+ * Boards played from a tiled save are too large to copy, so instead their
+ * changes are written into the save itself, and the snapshot names the file
+ * and its revision. Saving the game also changes the file, so the journal
+ * notes the revision each time it changes, and recovering skips the moves the
+ * file already holds.
+ * <p>
+ * If writing fails, saving stops and the error is passed to the handler
+ * given when starting.
+ * <p>
+ * Like replays, only one thread may click the board while it is saved.
+ *
+ * @author  KnightMiner
+ */
+public class AutoSave implements MoveListener, Closeable {
+
+    /** Longest time a move waits before being synced to disk, in milliseconds */
+    public static final long SYNC_INTERVAL = 200;
+
+    // "MSWJ" in ASCII, used to recognize journal files
+    private static final int MAGIC = 0x4D53574A;
+    // version 1 packed clicks into an int, which only fit boards under 2^29
+    // spaces. Version 3 added revisions
+    private static final int VERSION = 3;
+    // "MSWR" in ASCII, starts a snapshot naming a tiled save
+    private static final int LINK_MAGIC = 0x4D535752;
+
+    // moves waiting before they are written without waiting for the interval
+    private static final int SYNC_MOVES = 256;
+    // moves in a journal before the board is compacted into a snapshot
+    private static final int COMPACT_MOVES = 4096;
+    // largest frame accepted when recovering, anything larger is corrupt
+    private static final int MAX_FRAME = 1 << 26;
+
+    // types of journal records
+    private static final int CLICK = 0;
+    private static final int START = 1;
+    private static final int RESTART = 2;
+    private static final int NEW_GAME = 3;
+    private static final int UNDO = 4;
+    private static final int REDO = 5;
+    private static final int REVISION = 6;
+
+    private static final Placement[] PLACEMENTS = Placement.values();
+    private static final ClickAction[] ACTIONS = ClickAction.values();
+
+    private final MineSweeperBoard board;
+    private final Path directory;
+    private final int compactMoves;
+    private final Consumer<IOException> onError;
+    private final Thread writer;
+
+    // moves not yet written, guarded by this. Those before split belong to
+    // the journal before the waiting snapshot
+    private ByteBuffer pending = ByteBuffer.allocate(1024);
+    private int pendingMoves;
+    private long pendingSince;
+    private int split;
+
+    // copy of the board waiting to be written as a snapshot, or the board
+    // itself if played from a file at snapshotRevision. Guarded by this
+    private MineSweeperBoard snapshot;
+    private long snapshotRevision;
+
+    private boolean closed;
+    private IOException error;
+
+    // used only by the clicking thread: moves in the current journal, and the
+    // moves in it that can be undone and redone
+    private int journalMoves;
+    private int undoable, redoable;
+
+    // revision of the tiled save last noted in the journal, guarded by this
+    private long revision;
+
+    /**
+     * Starts saving a board, replacing any previous save in the directory.
+     * Use {@link #start(MineSweeperBoard, Path)}
+     * @param board         Board to save
+     * @param directory     Directory for the save files
+     * @param compactMoves  Moves in a journal before compacting it
+     * @param onError       Told on the writer thread if writing fails
+     */
+    AutoSave(MineSweeperBoard board, Path directory, int compactMoves, Consumer<IOException> onError)
+            throws IOException {
+        this.board = board;
+        this.directory = directory;
+        this.compactMoves = compactMoves;
+        this.onError = onError;
+
+        Files.createDirectories(directory);
+        deleteBefore(Long.MAX_VALUE);
+
+        // start with a snapshot of the board as it is
+        compact();
+        board.addMoveListener(this);
+
+        writer = new Thread(this::runWriter, "AutoSave");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Starts saving a board, replacing any previous save in the directory
+     * @param board      Board to save
+     * @param directory  Directory for the save files
+     * @param onError    Told on the writer thread if writing fails, after
+     *                   which moves are no longer saved
+     * @return  the autosave, close it to stop saving
+     * @throws IOException  if the directory cannot be used
+     */
+    public static AutoSave start(MineSweeperBoard board, Path directory, Consumer<IOException> onError)
+            throws IOException {
+        return new AutoSave(board, directory, COMPACT_MOVES, onError);
+    }
+
+    /**
+     * Stops saving, waiting for all moves to be written. The save is kept, so
+     * the game can still be recovered
+     * @throws IOException  if any moves failed to save
+     */
+    @Override
+    public void close() throws IOException {
+        board.removeMoveListener(this);
+        synchronized(this) {
+            closed = true;
+            notifyAll();
+        }
+
+        try {
+            writer.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized(this) {
+            if(error != null) {
+                throw error;
+            }
+        }
+    }
+
+
+    /* Recording */
+
+    @Override
+    public void clicked(int index, ClickAction action) {
+        undoable++;
+        redoable = 0;
+        append(CLICK, Replay.packClick(index, action));
+    }
+
+    @Override
+    public void started(int clicked) {
+        synchronized(this) {
+            if(closed) {
+                return;
+            }
+            noteRevision();
+            ByteBuffer buffer = reserve(14);
+            buffer.put((byte) START);
+            buffer.put((byte) board.getPlacement().ordinal());
+            buffer.putInt(clicked);
+            buffer.putLong(board.getSeed());
+            moveAdded();
+        }
+    }
+
+    @Override
+    public void restarted() {
+        // restarting clears the moves that can be undone
+        undoable = redoable = 0;
+        append(RESTART, 0);
+    }
+
+    @Override
+    public void cleared() {
+        undoable = redoable = 0;
+        append(NEW_GAME, 0);
+    }
+
+    @Override
+    public void undone() {
+        // undoing a move from before the snapshot cannot be replayed, so
+        // take a new snapshot after it
+        if(undoable == 0) {
+            compact();
+            return;
+        }
+        undoable--;
+        redoable++;
+        append(UNDO, 0);
+    }
+
+    @Override
+    public void redone() {
+        if(redoable == 0) {
+            compact();
+            return;
+        }
+        redoable--;
+        undoable++;
+        append(REDO, 0);
+    }
+
+    /**
+     * Adds a record to the moves waiting to be written
+     * @param type  Type of record
+     * @param move  Packed click, only used by clicks
+     */
+    private void append(int type, long move) {
+        synchronized(this) {
+            if(closed) {
+                return;
+            }
+            noteRevision();
+            ByteBuffer buffer = reserve(6);
+            buffer.put((byte) type);
+            if(type == CLICK) {
+                buffer.putInt((int) (move >>> 3));
+                buffer.put((byte) (move & 7));
+            }
+            moveAdded();
+        }
+
+        journalMoves++;
+        if(journalMoves >= compactMoves) {
+            compact();
+        }
+    }
+
+    /**
+     * Notes in the journal if the tiled save was saved since the last move,
+     * so recovering can tell which moves the file holds. Must hold the lock
+     */
+    private void noteRevision() {
+        if(board instanceof MappedMineSweeperBoard) {
+            long current = ((MappedMineSweeperBoard) board).getRevision();
+            if(current != revision) {
+                revision = current;
+                reserve(9).put((byte) REVISION).putLong(current);
+            }
+        }
+    }
+
+    /**
+     * Makes room for a record in the pending moves. Must hold the lock
+     * @param bytes  Size of the record
+     * @return  the buffer to write the record to
+     */
+    private ByteBuffer reserve(int bytes) {
+        // the first move starts the interval
+        if(pending.position() == 0) {
+            pendingSince = System.nanoTime();
+            notifyAll();
+        }
+        if(pending.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        return pending;
+    }
+
+    /**
+     * Wakes the writer once enough moves are waiting. Must hold the lock
+     */
+    private void moveAdded() {
+        pendingMoves++;
+        if(pendingMoves == SYNC_MOVES) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Copies the board to be written as a snapshot, starting a new journal
+     * for later moves. Called on the clicking thread, as the board can only
+     * be copied between moves. Boards played from a tiled save only have
+     * their changes taken, to be written into the file
+     */
+    private void compact() {
+        MineSweeperBoard copy;
+        long taken = 0;
+        if(board instanceof MappedMineSweeperBoard) {
+            copy = board;
+            taken = ((MappedMineSweeperBoard) board).takeChanges();
+        }
+        else {
+            copy = board.copy();
+        }
+        synchronized(this) {
+            // a snapshot not yet written is replaced, along with the moves after it
+            if(snapshot != null) {
+                pending.position(split);
+            }
+            else {
+                split = pending.position();
+            }
+            snapshot = copy;
+            snapshotRevision = taken;
+            // the new journal starts from this revision
+            revision = taken;
+            notifyAll();
+        }
+        journalMoves = 0;
+        undoable = redoable = 0;
+    }
+
+
+    /* Writing */
+
+    /**
+     * Background thread writing moves and snapshots
+     */
+    private void runWriter() {
+        FileChannel journal = null;
+        long generation = 0;
+        try {
+            while(true) {
+                byte[] moves;
+                MineSweeperBoard copy;
+                long copyRevision;
+                synchronized(this) {
+                    waitForWork();
+                    if(closed && pending.position() == 0 && snapshot == null) {
+                        break;
+                    }
+
+                    // moves before a waiting snapshot go in the old journal
+                    int end = snapshot != null ? split : pending.position();
+                    moves = new byte[end];
+                    pending.flip();
+                    pending.get(moves);
+                    pending.compact();
+                    pendingMoves = 0;
+                    split = 0;
+                    copy = snapshot;
+                    copyRevision = snapshotRevision;
+                    snapshot = null;
+                }
+
+                if(moves.length > 0 && journal != null) {
+                    writeFrame(journal, moves);
+                }
+
+                // later moves go in a new journal, which is only used once
+                // the snapshot is in place
+                if(copy != null) {
+                    if(journal != null) {
+                        journal.close();
+                    }
+                    generation++;
+                    journal = createJournal(generation);
+                    // only appears once complete
+                    if(copy instanceof MappedMineSweeperBoard) {
+                        MappedMineSweeperBoard mapped = (MappedMineSweeperBoard) copy;
+                        mapped.writeChanges();
+                        writeLink(mapped.getPath(), copyRevision, snapshotPath(directory, generation));
+                    }
+                    else {
+                        MineSweeperBoard.writeSave(copy, snapshotPath(directory, generation), SaveFormat.Progress.NONE);
+                    }
+                    deleteBefore(generation);
+                }
+            }
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+            synchronized(this) {
+                // stop collecting moves that will never be written
+                error = e;
+                closed = true;
+            }
+            onError.accept(e);
+        }
+        finally {
+            if(journal != null) {
+                try {
+                    journal.close();
+                }
+                catch(IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until moves are ready to write, a snapshot is waiting, or the
+     * save is closed. Must hold the lock
+     */
+    private void waitForWork() {
+        try {
+            while(!closed && snapshot == null && pendingMoves < SYNC_MOVES) {
+                if(pending.position() == 0) {
+                    wait();
+                }
+                else {
+                    long waited = (System.nanoTime() - pendingSince) / 1000000;
+                    if(waited >= SYNC_INTERVAL) {
+                        return;
+                    }
+                    wait(SYNC_INTERVAL - waited);
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            // write what we have
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    /**
+     * Creates an empty journal
+     * @param generation  Snapshot the journal follows
+     * @return  the journal
+     */
+    private FileChannel createJournal(long generation) throws IOException {
+        FileChannel channel = FileChannel.open(journalPath(directory, generation), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(14);
+        header.putInt(MAGIC).putShort((short) VERSION).putLong(generation).flip();
+        while(header.hasRemaining()) {
+            channel.write(header);
+        }
+        return channel;
+    }
+
+    /**
+     * Writes a snapshot naming a tiled save, renamed into place once complete
+     * @param file      Tiled save holding the board
+     * @param revision  Revision of the file the journal follows
+     * @param path      Snapshot to write
+     */
+    private static void writeLink(Path file, long revision, Path path) throws IOException {
+        byte[] name = file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer link = ByteBuffer.allocate(18 + name.length);
+        link.putInt(LINK_MAGIC).putShort((short) VERSION).putLong(revision).putInt(name.length).put(name).flip();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(link.hasRemaining()) {
+                channel.write(link);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Appends moves to a journal and syncs it to disk
+     * @param journal  Journal to write to
+     * @param moves    Records to write
+     */
+    private static void writeFrame(FileChannel journal, byte[] moves) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(moves);
+        ByteBuffer[] frame = {
+                ByteBuffer.allocate(8).putInt(moves.length).putInt((int) crc.getValue()),
+                ByteBuffer.wrap(moves)
+        };
+        frame[0].flip();
+        while(frame[1].hasRemaining()) {
+            journal.write(frame);
+        }
+        journal.force(false);
+    }
+
+
+    /**
+     * Deletes the snapshots and journals older than a generation, as the newer
+     * snapshot replaces them
+     * @param generation  Oldest generation to keep
+     */
+    private void deleteBefore(long generation) throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for(Path file : files) {
+                long number = parseGeneration(file);
+                if(number >= 0 && number < generation) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+
+    /* Recovering */
+
+    /**
+     * Checks if a directory holds a save that can be recovered
+     * @param directory  Directory to check
+     * @return  true if there is a snapshot
+     * @throws IOException  if the directory cannot be read
+     */
+    public static boolean exists(Path directory) throws IOException {
+        return latestSnapshot(directory) > 0;
+    }
+
+    /**
+     * Recovers the game saved in a directory, loading the latest snapshot and
+     * replaying the moves after it. Moves cut off by a crash are left out
+     * @param directory  Directory of the save
+     * @return  the board, or null if there is no save
+     * @throws IOException  if the snapshot cannot be read
+     */
+    public static MineSweeperBoard recover(Path directory) throws IOException {
+        long generation = latestSnapshot(directory);
+        if(generation == 0) {
+            return null;
+        }
+
+        Path snapshot = snapshotPath(directory, generation);
+        Replayer replayer;
+        if(SaveFormat.readMagic(snapshot) == LINK_MAGIC) {
+            replayer = openLink(snapshot);
+        }
+        else {
+            replayer = new Replayer(MineSweeperBoard.readSave(snapshot, SaveFormat.Progress.NONE), -1);
+        }
+
+        // snapshots that failed to replace this one may have left journals
+        for(long number = generation; Files.exists(journalPath(directory, number)); number++) {
+            if(!replayer.replay(journalPath(directory, number), number)) {
+                break;
+            }
+        }
+        return replayer.board;
+    }
+
+    /**
+     * Opens the tiled save named by a snapshot
+     * @param snapshot  Snapshot naming the file
+     * @return  a replayer for the file, skipping the moves saved to it since
+     */
+    private static Replayer openLink(Path snapshot) throws IOException {
+        ByteBuffer link = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+        long revision;
+        byte[] name;
+        try {
+            link.getInt();
+            link.getShort();
+            revision = link.getLong();
+            name = new byte[link.getInt()];
+            link.get(name);
+        }
+        catch(BufferUnderflowException|NegativeArraySizeException e) {
+            throw new IOException("Invalid snapshot " + snapshot, e);
+        }
+
+        MappedMineSweeperBoard board = MappedMineSweeperBoard.open(Paths.get(new String(name, StandardCharsets.UTF_8)));
+        if(board.getRevision() < revision) {
+            board.close();
+            throw new IOException("Save " + board.getPath() + " is older than the last game");
+        }
+
+        // if saved since, moves up to the save are already in the file
+        return new Replayer(board, board.getRevision() == revision ? -1 : board.getRevision());
+    }
+
+    /**
+     * Replays journals on a board
+     */
+    private static class Replayer {
+        private final MineSweeperBoard board;
+        // revision of a tiled save whose moves are skipped, or -1 for none
+        private long skipTo;
+
+        /**
+         * Creates a replayer for a board
+         * @param board   Board to update
+         * @param skipTo  Moves are skipped until the journal reaches this revision, -1 to replay all
+         */
+        private Replayer(MineSweeperBoard board, long skipTo) {
+            this.board = board;
+            this.skipTo = skipTo;
+        }
+
+        /**
+         * Replays the moves in a journal
+         * @param path        Journal to read
+         * @param generation  Expected generation of the journal
+         * @return  true if the whole journal was replayed, false if it ended
+         *          in a cut off write
+         */
+        private boolean replay(Path path, long generation) throws IOException {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            if(data.remaining() < 14 || data.getInt() != MAGIC) {
+                return false;
+            }
+            int version = data.getShort();
+            if(version < 1 || version > VERSION || data.getLong() != generation) {
+                return false;
+            }
+
+            CRC32 crc = new CRC32();
+            while(data.hasRemaining()) {
+                // a frame cut off or damaged by a crash ends the journal
+                if(data.remaining() < 8) {
+                    return false;
+                }
+                int length = data.getInt();
+                int checksum = data.getInt();
+                if(length <= 0 || length > MAX_FRAME || length > data.remaining()) {
+                    return false;
+                }
+                crc.reset();
+                crc.update(data.array(), data.position(), length);
+                if((int) crc.getValue() != checksum) {
+                    return false;
+                }
+
+                ByteBuffer frame = data.slice();
+                frame.limit(length);
+                data.position(data.position() + length);
+                try {
+                    while(frame.hasRemaining()) {
+                        replayRecord(frame, version);
+                    }
+                }
+                catch(BufferUnderflowException|BufferOverflowException|ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Invalid journal record in " + path, e);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Applies a single record to the board
+         * @param record   Buffer positioned at the record, moved past it
+         * @param version  Version of the journal
+         */
+        private void replayRecord(ByteBuffer record, int version) throws IOException {
+            // records are still read while skipping, to find the next
+            boolean apply = skipTo < 0;
+            int type = record.get();
+            switch(type) {
+                case CLICK:
+                    if(version == 1) {
+                        int move = record.getInt();
+                        if(apply) {
+                            Replay.apply(board, move);
+                        }
+                    }
+                    else {
+                        int index = record.getInt();
+                        ClickAction action = ACTIONS[record.get()];
+                        if(apply) {
+                            board.handleClick(index, action);
+                        }
+                    }
+                    break;
+                case START:
+                    // generate the mines as they were, the click follows
+                    Placement placement = PLACEMENTS[record.get()];
+                    int clicked = record.getInt();
+                    long seed = record.getLong();
+                    if(apply) {
+                        board.setPlacement(placement);
+                        board.startGame(seed, clicked);
+                    }
+                    break;
+                case RESTART:
+                    if(apply) {
+                        board.restart();
+                    }
+                    break;
+                case NEW_GAME:
+                    if(apply) {
+                        board.newGame();
+                    }
+                    break;
+                case UNDO:
+                    if(apply) {
+                        board.undo();
+                    }
+                    break;
+                case REDO:
+                    if(apply) {
+                        board.redo();
+                    }
+                    break;
+                case REVISION:
+                    // moves after the file was saved are not in it
+                    if(record.getLong() == skipTo) {
+                        skipTo = -1;
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown journal record " + type);
+            }
+        }
+    }
+
+
+    /* Files */
+
+    /**
+     * Finds the newest complete snapshot in a directory
+     * @param directory  Directory to check
+     * @return  the snapshot generation, or 0 if none
+     */
+    private static long latestSnapshot(Path directory) throws IOException {
+        if(!Files.isDirectory(directory)) {
+            return 0;
+        }
+
+        long latest = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.bin")) {
+            for(Path file : files) {
+                latest = Math.max(latest, parseGeneration(file));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Gets the generation from the name of a snapshot or journal
+     * @param file  File to check
+     * @return  the generation, or -1 if not a save file
+     */
+    private static long parseGeneration(Path file) {
+        String name = file.getFileName().toString();
+        int start = name.indexOf('-');
+        int end = name.lastIndexOf('.');
+        if(start < 0 || end <= start || !(name.startsWith("snapshot-") || name.startsWith("journal-"))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(start + 1, end));
+        }
+        catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Path snapshotPath(Path directory, long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+
+    private static Path journalPath(Path directory, long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+}
@@ -0,0 +1,223 @@
+package knightminer.minesweeper;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import knightminer.minesweeper.MineSweeper.Difficulty;
+import knightminer.minesweeper.MineSweeperBoard.Placement;
+
+/**
+ * Keeps a few boards of each preset difficulty ready to play, so starting a
+ * new game does not wait on placing mines. This matters most in no guessing
+ * mode, where finding a seed means playing out many candidate boards.
+ * <p>
+ * Pooled boards use {@link Placement#SHIFTED}, so their mines are placed
+ * around the middle of the board before the first click, and moved to
+ * wherever the player clicks first. In no guessing mode the moved board is
+ * checked again from the real click, and a new seed is searched for if it
+ * would need guessing.
+ * <p>
+ * A single low priority daemon thread refills the pool as boards are taken.
+ * Seeds for no guessing mode are searched for in a pool of low priority
+ * threads, rather than the common pool the game uses after the first click.
+ * If the pool is empty a plain board is returned, placing its mines on the
+ * first click as before. Hits, misses and refill times are counted so the
+ * pool size can be tuned.
+ *
+ * @author  KnightMiner
+ */
+class BoardPool {
+
+    /** Boards kept ready for each difficulty */
+    public static final int CAPACITY = 3;
+
+    // boards ready for each preset difficulty, all guarded by this
+    private final Map<Difficulty, ArrayDeque<MineSweeperBoard>> boards = new EnumMap<>(Difficulty.class);
+
+    // no guessing mode boards are made for, and a count of changes so boards
+    // started before a change are dropped
+    private boolean noGuess;
+    private int generation;
+
+    // runs the seed search for no guessing boards
+    private final ForkJoinPool searchers = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }, null, false);
+
+    // metrics
+    private long hits;
+    private long misses;
+    private long refills;
+    private long refillNanos;
+    private long maxRefillNanos;
+
+    /**
+     * Creates a pool and starts filling it
+     */
+    public BoardPool() {
+        for(Difficulty difficulty : Difficulty.values()) {
+            if(difficulty.isPreset()) {
+                boards.put(difficulty, new ArrayDeque<>(CAPACITY));
+            }
+        }
+
+        Thread filler = new Thread(this::fill, "Board pool");
+        filler.setDaemon(true);
+        filler.setPriority(Thread.MIN_PRIORITY);
+        filler.start();
+    }
+
+    /**
+     * Takes a board from the pool
+     * @param difficulty  Preset difficulty of the board
+     * @return  a ready board, or a new board that places its mines on the
+     *          first click if none are ready
+     * @throws IllegalArgumentException  if the difficulty is not a preset
+     */
+    public MineSweeperBoard take(Difficulty difficulty) {
+        if(!difficulty.isPreset()) {
+            throw new IllegalArgumentException("Only preset difficulties are pooled");
+        }
+
+        synchronized(this) {
+            MineSweeperBoard board = boards.get(difficulty).poll();
+            notifyAll();
+            if(board != null) {
+                hits++;
+                return board;
+            }
+            misses++;
+        }
+        return difficulty.createBoard();
+    }
+
+    /**
+     * Sets if boards are made for no guessing mode, dropping any made for the
+     * other mode
+     * @param noGuess  true if new games need no guessing
+     */
+    public synchronized void setNoGuess(boolean noGuess) {
+        if(this.noGuess != noGuess) {
+            this.noGuess = noGuess;
+            generation++;
+            for(ArrayDeque<MineSweeperBoard> queue : boards.values()) {
+                queue.clear();
+            }
+            notifyAll();
+        }
+    }
+
+
+    /* Filling */
+
+    /**
+     * Fills the pool until the thread is interrupted, waiting while it is full
+     */
+    private void fill() {
+        try {
+            while(true) {
+                Difficulty difficulty;
+                boolean noGuess;
+                int generation;
+                synchronized(this) {
+                    while((difficulty = findEmptiest()) == null) {
+                        wait();
+                    }
+                    noGuess = this.noGuess;
+                    generation = this.generation;
+                }
+
+                long start = System.nanoTime();
+                MineSweeperBoard board = difficulty.createBoard();
+                board.setPlacement(Placement.SHIFTED);
+                board.setNoGuess(noGuess);
+                board.prepareMines(searchers);
+                long time = System.nanoTime() - start;
+
+                synchronized(this) {
+                    // the mode changed while the board was made
+                    if(generation == this.generation) {
+                        boards.get(difficulty).add(board);
+                        refills++;
+                        refillNanos += time;
+                        maxRefillNanos = Math.max(maxRefillNanos, time);
+                    }
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            // nothing left to do
+        }
+    }
+
+    /**
+     * Finds the difficulty with the fewest boards ready
+     * @return  the difficulty, or null if the pool is full
+     */
+    private Difficulty findEmptiest() {
+        Difficulty emptiest = null;
+        int fewest = CAPACITY;
+        for(Map.Entry<Difficulty, ArrayDeque<MineSweeperBoard>> entry : boards.entrySet()) {
+            if(entry.getValue().size() < fewest) {
+                emptiest = entry.getKey();
+                fewest = entry.getValue().size();
+            }
+        }
+        return emptiest;
+    }
+
+
+    /* Metrics */
+
+    /**
+     * Gets the number of boards taken ready from the pool
+     * @return  the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of boards taken while none were ready
+     * @return  the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the fraction of boards taken ready from the pool
+     * @return  the hit rate from 0 to 1, or 0 if no boards were taken
+     */
+    public synchronized double getHitRate() {
+        long taken = hits + misses;
+        return taken == 0 ? 0 : (double) hits / taken;
+    }
+
+    /**
+     * Gets the average time to make a board for the pool
+     * @return  the average refill time in milliseconds, or 0 if none were made
+     */
+    public synchronized double getAverageRefillMillis() {
+        return refills == 0 ? 0 : refillNanos / 1e6 / refills;
+    }
+
+    /**
+     * Gets the longest time taken to make a board for the pool
+     * @return  the longest refill time in milliseconds
+     */
+    public synchronized double getMaxRefillMillis() {
+        return maxRefillNanos / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("BoardPool[hits=%d, misses=%d, hit rate=%.1f%%, refills=%d, avg=%.2fms, max=%.2fms]",
+                hits, misses, getHitRate() * 100, refills, getAverageRefillMillis(), getMaxRefillMillis());
+    }
+}
@@ -0,0 +1,325 @@
+package knightminer.minesweeper;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Minesweeper board that can be clicked from several threads at once.
+ * <p>
+ * Rows are grouped into bands, each guarded by one of a set of striped locks.
+ * Clicks that can only change the 3x3 area around the space (flags, marks,
+ * and reveals of numbers other than 0) lock just the bands covering that area,
+ * so players in different parts of the board do not wait on each other.
+ * Anything that can reach further or end the game (the first click, opening
+ * a 0, clicking a mine, cheats, or revealing the last safe spaces) waits for
+ * all other clicks to finish and runs alone, so game over and victory are
+ * decided exactly once.
+ * <p>
+ * Changes to pieces are synchronized on the board, including marking the
+ * update set, so anything draining {@link #getUpdates()} from another thread
+ * should synchronize on the board as well.
+ *
+ * @author  KnightMiner
+ */
+public class ConcurrentMineSweeperBoard extends MineSweeperBoard {
+    private static final long serialVersionUID = 1L;
+
+    // rows in each band, at least 3 so a 3x3 area covers at most two bands
+    private static final int BAND_SHIFT = 2;
+    // number of band locks, a power of two
+    private static final int STRIPES = 16;
+
+    // held for reading by local clicks, and for writing by clicks that run alone
+    private transient ReentrantReadWriteLock boardLock;
+    private transient ReentrantLock[] stripes;
+
+    // safe spaces local clicks in progress may reveal, guarded by this
+    private transient int reserved;
+
+    // neighbor checks, stored so local clicks create no objects
+    private transient IntPredicate isFlag;
+    private transient IntPredicate isHidden;
+    private transient IntPredicate isUnsafe;
+
+    /**
+     * Creates a new concurrent minesweeper board with the specified dimensions
+     * @param width      Width of the board
+     * @param height     Height of the board
+     * @param mineCount  Total mines
+     * @param cheats     Cheats allowed
+     */
+    public ConcurrentMineSweeperBoard(int width, int height, int mineCount, int cheats) {
+        super(width, height, mineCount, cheats);
+        createLocks();
+    }
+
+    /**
+     * Creates a new concurrent minesweeper board with the specified dimensions
+     * @param width      Width of the board
+     * @param height     Height of the board
+     * @param mineCount  Total mines
+     */
+    public ConcurrentMineSweeperBoard(int width, int height, int mineCount) {
+        this(width, height, mineCount, 1);
+    }
+
+    /**
+     * Creates the locks, which are not saved with the board
+     */
+    private void createLocks() {
+        // clicks from several threads would mix their changes together
+        super.setJournalCapacity(0);
+
+        boardLock = new ReentrantReadWriteLock();
+        stripes = new ReentrantLock[STRIPES];
+        for(int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+
+        isFlag = (index) -> getPiece(index) == Piece.FLAG;
+        isHidden = (index) -> {
+            Piece piece = getPiece(index);
+            return piece == null || piece.isReplaceable();
+        };
+        isUnsafe = (index) -> isHidden.test(index)
+                && (isMine(index) || getNumber(index) == Piece.N0);
+    }
+
+    /**
+     * Reads the board from a stream, recreating the locks
+     * @param stream  Stream to read from
+     */
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        createLocks();
+    }
+
+
+    /* Clicking */
+
+    @Override
+    public void handleClick(int index, ClickAction action) {
+        if(!isValid(index)) {
+            return;
+        }
+
+        // most clicks only change the spaces around them
+        if(tryLocalClick(index, action)) {
+            return;
+        }
+
+        // anything else runs alone
+        boardLock.writeLock().lock();
+        try {
+            super.handleClick(index, action);
+        }
+        finally {
+            boardLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a click holding only the locks around the space, if the click
+     * cannot change anything outside the 3x3 area or end the game
+     * @param index   Index of the space clicked
+     * @param action  Type of click
+     * @return  true if the click ran, false if it must run alone
+     */
+    private boolean tryLocalClick(int index, ClickAction action) {
+        // cheats may generate the mines and always reveal something
+        if(action == ClickAction.CHEAT) {
+            return false;
+        }
+
+        boardLock.readLock().lock();
+        try {
+            // the first click generates the mines
+            if(action == ClickAction.DEFAULT && !isGenerated()) {
+                return false;
+            }
+
+            // lock the bands covering the rows above and below
+            int y = index / getWidth();
+            int first = ((y == 0 ? 0 : y - 1) >> BAND_SHIFT) & (STRIPES - 1);
+            int second = (Math.min(y + 1, getHeight() - 1) >> BAND_SHIFT) & (STRIPES - 1);
+            ReentrantLock low = stripes[Math.min(first, second)];
+            ReentrantLock high = stripes[Math.max(first, second)];
+            low.lock();
+            if(high != low) {
+                high.lock();
+            }
+            try {
+                // count the spaces revealed, if any might open more or be a mine
+                // then we need the whole board
+                int spaces = action == ClickAction.DEFAULT ? countReveals(index) : 0;
+                if(spaces < 0 || !reserve(spaces)) {
+                    return false;
+                }
+
+                try {
+                    super.handleClick(index, action);
+                }
+                finally {
+                    release(spaces);
+                }
+                return true;
+            }
+            finally {
+                if(high != low) {
+                    high.unlock();
+                }
+                low.unlock();
+            }
+        }
+        finally {
+            boardLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the spaces a default click will reveal, as long as they are all
+     * safe numbers other than 0
+     * @param index  Index of the space clicked
+     * @return  the number of spaces revealed, or -1 if the click may reveal
+     *          a mine or open a 0
+     */
+    private int countReveals(int index) {
+        Piece piece = getPiece(index);
+
+        // numbers click all their neighbors if the flags match
+        if(piece != null && piece.isNumber()) {
+            if(countNeighbors(index, isFlag) != piece.getNumber()) {
+                return 0;
+            }
+            if(countNeighbors(index, isUnsafe) > 0) {
+                return -1;
+            }
+            return countNeighbors(index, isHidden);
+        }
+
+        // other pieces are only clicked if replaceable
+        if(!isHidden.test(index)) {
+            return 0;
+        }
+        return isUnsafe.test(index) ? -1 : 1;
+    }
+
+    /**
+     * Reserves safe spaces for a local click to reveal. Fails if the click
+     * might reveal the last safe space, as victory has to be decided alone
+     * @param spaces  Number of spaces the click may reveal
+     * @return  true if the spaces were reserved
+     */
+    private synchronized boolean reserve(int spaces) {
+        if(spaces == 0) {
+            return true;
+        }
+        if(getHiddenSafeSpaces() - reserved <= spaces) {
+            return false;
+        }
+        reserved += spaces;
+        return true;
+    }
+
+    /**
+     * Releases spaces reserved by a local click once it finishes
+     * @param spaces  Number of spaces reserved
+     */
+    private synchronized void release(int spaces) {
+        reserved -= spaces;
+    }
+
+    /**
+     * Places a piece at the specified index. Synchronized so the counters and
+     * update set stay correct while several bands change at once
+     * @param index  Index of the space
+     * @param piece  Piece to place on the space
+     */
+    @Override
+    protected synchronized void setPiece(int index, Piece piece) {
+        super.setPiece(index, piece);
+    }
+
+
+    /* Whole board changes */
+
+    /**
+     * Runs an action with no clicks in progress
+     * @param action  Action to run
+     */
+    private void runAlone(Runnable action) {
+        boardLock.writeLock().lock();
+        try {
+            action.run();
+        }
+        finally {
+            boardLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void generateMines(Space space) {
+        runAlone(() -> super.generateMines(space));
+    }
+
+    @Override
+    public MineSweeperBoard copy() {
+        MineSweeperBoard[] copy = new MineSweeperBoard[1];
+        runAlone(() -> copy[0] = super.copy());
+        return copy[0];
+    }
+
+    @Override
+    public void newGame() {
+        runAlone(super::newGame);
+    }
+
+    @Override
+    public void restart() {
+        runAlone(super::restart);
+    }
+
+    @Override
+    public void saveGame(String filename) {
+        runAlone(() -> super.saveGame(filename));
+    }
+
+    @Override
+    public void loseGame(Space clicked) {
+        runAlone(() -> super.loseGame(clicked));
+    }
+
+    @Override
+    public void checkVictory() {
+        // clicks check at the end while still holding their locks, which is
+        // safe as local clicks reserve spaces so they can never win
+        if(boardLock.getReadHoldCount() > 0 || boardLock.isWriteLockedByCurrentThread()) {
+            super.checkVictory();
+        }
+        else {
+            runAlone(super::checkVictory);
+        }
+    }
+
+    @Override
+    public void setPiece(Space space, Piece piece) {
+        runAlone(() -> super.setPiece(space, piece));
+    }
+
+    /**
+     * Clicks from several threads cannot be undone one at a time, so undo is
+     * always disabled on a concurrent board
+     * @param capacity  Ignored
+     */
+    @Override
+    public void setJournalCapacity(int capacity) {
+    }
+
+    @Override
+    public void setPlacement(Placement placement) {
+        runAlone(() -> super.setPlacement(placement));
+    }
+}
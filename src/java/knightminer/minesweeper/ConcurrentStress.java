@@ -0,0 +1,255 @@
+package knightminer.minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+
+/**
+ * Clicks a {@link ConcurrentMineSweeperBoard} from many threads at once, then
+ * checks the board is the same as one clicked by a single thread would be.
+ * <p>
+ * Every thread clicks random spaces until the game ends. Safe spaces get
+ * default clicks, which also click around numbers whose flags match, and
+ * mines get flag clicks, cycling them through flags and marks so the flag
+ * counter keeps changing. Every fourth game a thread may click a mine, so
+ * losing is covered as well as winning. Once the game ends the board is
+ * checked for:
+ * <ul>
+ *   <li>Numbers that are wrong or on mines, and a revealed counter that does
+ *       not match the numbers showing</li>
+ *   <li>A flag counter that does not match the flags showing</li>
+ *   <li>0s with hidden spaces around them, from areas opened only part way</li>
+ *   <li>The game ending more than once, or both won and lost</li>
+ * </ul>
+ * No Swing or AWT classes are loaded, so this can be run headless:
+ * <pre>java knightminer.minesweeper.ConcurrentStress [WxHxMINES] [games] [threads]</pre>
+ * The exit status is 1 if any game failed a check.
+ *
+ * @author  KnightMiner
+ */
+public class ConcurrentStress {
+
+    // one in this many picks of a mine clicks it, in games that may be lost
+    private static final int LOSE_CHANCE = 64;
+
+    private final int width, height, mineCount;
+    private final int threads;
+
+    /**
+     * Creates a stress test for a board size
+     * @param width      Width of the board
+     * @param height     Height of the board
+     * @param mineCount  Total mines
+     * @param threads    Threads clicking each board
+     */
+    public ConcurrentStress(int width, int height, int mineCount, int threads) {
+        this.width = width;
+        this.height = height;
+        this.mineCount = mineCount;
+        this.threads = threads;
+    }
+
+    /**
+     * Plays a single game with all threads clicking
+     * @param seed      Seed for the mines
+     * @param mayLose   If true, threads sometimes click mines
+     * @param problems  Added to with anything wrong with the board
+     * @return  true if the game was won
+     */
+    public boolean play(long seed, boolean mayLose, List<String> problems) throws InterruptedException {
+        ConcurrentMineSweeperBoard board = new ConcurrentMineSweeperBoard(width, height, mineCount);
+        board.setJournalCapacity(0);
+
+        // clicks are only reported if they changed something, and none may
+        // once the game is over, so only the click ending it sees it over
+        AtomicInteger endings = new AtomicInteger();
+        board.addMoveListener(new MoveListener() {
+            @Override
+            public void clicked(int index, ClickAction action) {
+                if(board.gameOver()) {
+                    endings.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void started(int clicked) {}
+
+            @Override
+            public void restarted() {}
+
+            @Override
+            public void cleared() {}
+
+            @Override
+            public void undone() {}
+
+            @Override
+            public void redone() {}
+        });
+
+        int spaces = width * height;
+        int first = ThreadLocalRandom.current().nextInt(spaces);
+        board.startGame(seed, first);
+        board.handleClick(first, ClickAction.DEFAULT);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(threads);
+        for(int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+                click(board, mayLose);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        check(board, endings.get(), problems);
+        return board.hasWon();
+    }
+
+    /**
+     * Clicks random spaces until the game ends
+     * @param board    Board to click
+     * @param mayLose  If true, sometimes clicks a mine
+     */
+    private static void click(MineSweeperBoard board, boolean mayLose) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int spaces = board.getWidth() * board.getHeight();
+        while(!board.gameOver()) {
+            int index = random.nextInt(spaces);
+            if(!board.isMine(index)) {
+                board.handleClick(index, ClickAction.DEFAULT);
+            }
+            else if(mayLose && random.nextInt(LOSE_CHANCE) == 0) {
+                board.handleClick(index, ClickAction.DEFAULT);
+            }
+            else {
+                board.handleClick(index, ClickAction.FLAG);
+            }
+        }
+    }
+
+    /**
+     * Checks a finished board
+     * @param board     Board to check
+     * @param endings   Number of clicks that saw the game over
+     * @param problems  Added to with anything wrong
+     */
+    private static void check(MineSweeperBoard board, int endings, List<String> problems) {
+        int spaces = board.getWidth() * board.getHeight();
+        int numbers = 0;
+        int flags = 0;
+        int red = 0;
+        int green = 0;
+        for(int index = 0; index < spaces; index++) {
+            Piece piece = board.getPiece(index);
+            if(piece == null) {
+                continue;
+            }
+            if(piece.isNumber()) {
+                numbers++;
+                if(board.isMine(index)) {
+                    problems.add("number on a mine at " + index);
+                }
+                else if(piece != board.getNumber(index)) {
+                    problems.add(piece + " at " + index + " should be " + board.getNumber(index));
+                }
+                else if(piece.getNumber() == 0) {
+                    checkZero(board, index, problems);
+                }
+            }
+            else if(piece == Piece.FLAG || piece == Piece.FLAG_NOT) {
+                flags++;
+            }
+            else if(piece == Piece.MINE_RED) {
+                red++;
+            }
+            else if(piece == Piece.MINE_GREEN) {
+                green++;
+            }
+        }
+
+        if(numbers != board.getRevealed()) {
+            problems.add(numbers + " numbers showing but " + board.getRevealed() + " counted");
+        }
+        if(flags != board.getFlagCount()) {
+            problems.add(flags + " flags showing but " + board.getFlagCount() + " counted");
+        }
+        if(!board.gameOver()) {
+            problems.add("game never ended");
+        }
+        else if(endings != 1) {
+            problems.add("game ended " + endings + " times");
+        }
+        if(board.hasWon() ? red > 0 || board.getHiddenSafeSpaces() != 0 : red != 1 || green > 0) {
+            problems.add((board.hasWon() ? "won" : "lost") + " with " + red + " red mines, " + green
+                    + " green mines, and " + board.getHiddenSafeSpaces() + " safe spaces hidden");
+        }
+    }
+
+    /**
+     * Checks every space around a 0 was revealed
+     * @param board     Board to check
+     * @param index     Index of the 0
+     * @param problems  Added to with any hidden neighbors
+     */
+    private static void checkZero(MineSweeperBoard board, int index, List<String> problems) {
+        int width = board.getWidth();
+        int x = index % width;
+        int y = index / width;
+        for(int j = Math.max(y - 1, 0); j <= Math.min(y + 1, board.getHeight() - 1); j++) {
+            for(int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                Piece piece = board.getPiece(j * width + i);
+                if(piece == null || piece.isMark()) {
+                    problems.add("0 at " + index + " left " + (j * width + i) + " hidden");
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String size = args.length > 0 ? args[0] : "64x64x600";
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        String[] parts = size.split("x");
+        ConcurrentStress stress = new ConcurrentStress(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                Integer.parseInt(parts[2]), threads);
+
+        int won = 0;
+        int failed = 0;
+        long start = System.nanoTime();
+        for(int game = 0; game < games; game++) {
+            long seed = MineOracle.mix(game);
+            List<String> problems = new ArrayList<>();
+            if(stress.play(seed, game % 4 == 3, problems)) {
+                won++;
+            }
+            if(!problems.isEmpty()) {
+                failed++;
+                System.out.println("Game " + game + " (seed " + Long.toHexString(seed) + "): " + problems);
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println(games + " games on " + size + " with " + threads + " threads: " + won + " won, "
+                + (games - won) + " lost, " + failed + " failed, " + millis + " ms");
+        if(failed > 0) {
+            System.exit(1);
+        }
+    }
+}
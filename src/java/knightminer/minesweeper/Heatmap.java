@@ -0,0 +1,169 @@
+package knightminer.minesweeper;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Keeps the chance of each hidden space being a mine up to date as a game is
+ * played, for shading the buttons.
+ * <p>
+ * The board is only read on the event dispatch thread, where the spaces
+ * drained from its {@link UpdateSet} are passed to {@link #changed(int)}.
+ * Their pieces are queued for a single low priority thread, which keeps its
+ * own copy of the pieces and solves it with a {@link ProbabilitySolver.Cache},
+ * so only the components near the changed spaces are counted again.
+ * <p>
+ * Calling {@link #refresh()} after a move cancels any solve still running, as
+ * the next solve includes its changes. Results are given to the listener on
+ * the event dispatch thread, unless a newer solve was started by then.
+ *
+ * @author  KnightMiner
+ */
+public class Heatmap implements AutoCloseable {
+
+    /** Time allowed for counting each solve, in milliseconds */
+    public static final long BUDGET = 1000;
+
+    private static final Piece[] PIECES = Piece.values();
+
+    private final MineSweeperBoard board;
+    private final int width, height;
+    private final Consumer<ProbabilitySolver.Result> listener;
+
+    private final ProbabilitySolver solver = new ProbabilitySolver(ForkJoinPool.commonPool(), BUDGET);
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Heatmap");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // pieces and counts as the worker last saw them, only used by the worker
+    private final Piece[] cells;
+    private final ProbabilitySolver.Cache cache;
+
+    // changes not yet seen by the worker, guarded by this
+    // pairs of index and piece ordinal plus one, or every piece at once
+    private final IntQueue pending = new IntQueue();
+    private Piece[] pendingAll;
+
+    // latest solve started, only used on the event dispatch thread
+    private Solve current;
+
+    /**
+     * Creates a heatmap for a board. Call {@link #refresh()} to solve it
+     * @param board     Board to follow
+     * @param listener  Given each result on the event dispatch thread
+     */
+    public Heatmap(MineSweeperBoard board, Consumer<ProbabilitySolver.Result> listener) {
+        this.board = board;
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.listener = listener;
+        this.cells = new Piece[width * height];
+        this.cache = new ProbabilitySolver.Cache(width, height);
+        changedAll();
+    }
+
+    /**
+     * Notes that a space changed since the last refresh
+     * @param index  Index of the space
+     */
+    public synchronized void changed(int index) {
+        Piece piece = board.getCell(index);
+        pending.add(index);
+        pending.add(piece == null ? 0 : piece.ordinal() + 1);
+    }
+
+    /**
+     * Notes that every space may have changed, such as on a new game
+     */
+    public synchronized void changedAll() {
+        pending.clear();
+        pendingAll = new Piece[width * height];
+        for(int index = 0; index < pendingAll.length; index++) {
+            pendingAll[index] = board.getCell(index);
+        }
+    }
+
+    /**
+     * Starts solving the board with the changes so far, canceling the
+     * previous solve
+     */
+    public void refresh() {
+        if(current != null) {
+            current.cancelled = true;
+        }
+        current = new Solve(board.getTotalMines());
+        worker.execute(current);
+    }
+
+    /**
+     * Stops solving, no more results are given after this
+     */
+    @Override
+    public void close() {
+        if(current != null) {
+            current.cancelled = true;
+        }
+        worker.shutdownNow();
+    }
+
+    /**
+     * Gives the worker's copy of the pieces the changes so far
+     */
+    private synchronized void applyChanges() {
+        if(pendingAll != null) {
+            System.arraycopy(pendingAll, 0, cells, 0, cells.length);
+            pendingAll = null;
+            cache.changedAll();
+        }
+        while(!pending.isEmpty()) {
+            int index = pending.poll();
+            int id = pending.poll();
+            cells[index] = id == 0 ? null : PIECES[id - 1];
+            cache.changed(index);
+        }
+    }
+
+    /**
+     * A single solve, run on the worker
+     */
+    private class Solve implements Runnable {
+        // hashed placements only know their mine count once generated
+        private final int mineCount;
+
+        // set on the event dispatch thread once a newer solve starts
+        private volatile boolean cancelled;
+
+        public Solve(int mineCount) {
+            this.mineCount = mineCount;
+        }
+
+        @Override
+        public void run() {
+            if(cancelled) {
+                return;
+            }
+
+            applyChanges();
+            try {
+                ProbabilitySolver.Result result = solver.solve(index -> cells[index], width, height,
+                        mineCount, cache, () -> cancelled);
+                SwingUtilities.invokeLater(() -> {
+                    if(!cancelled) {
+                        listener.accept(result);
+                    }
+                });
+            }
+            catch(CancellationException e) {
+                // the newer solve counts whatever was changed
+            }
+        }
+    }
+}
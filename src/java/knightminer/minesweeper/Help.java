@@ -127,11 +127,14 @@ public class Help {
             add(new IconDescription(null, "The big new game ubtton will simply start a new game at the current size.",
                     "This button will also change its label to denote winning and losing.", "",
                     "The new game menu allows starting the game in three different difficulties, along with a customizer.",
+                    "With no guessing checked, the mines are placed so the game can be won from the first click without guessing.",
+                    "Show mine chances shades each hidden space from green to red by its chance of holding a mine.",
                     "",
                     "Restart will restart the current game from the beginning, removing all revealed numbers and "
                             + "placed flags and marks without changing the minefield.",
                     "Note that when restarting the first click is no longer gaurenteed to be safe.", "",
-                    "Save game and load game allow you to save a game to the disc and resume at a later time.", "",
+                    "Save game and load game allow you to save a game to the disc and resume at a later time.",
+                    "Saved games lists your saves with their size, mines left, and progress to pick one to load.", "",
                     "The menu bar shows the number of mines left unmarked, which decreases whenever you place a flag.",
                     "Note that this will increment even if there is no mine under the flag, too many flags will make it negative.",
                     "",
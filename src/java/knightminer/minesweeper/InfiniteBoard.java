@@ -0,0 +1,606 @@
+package knightminer.minesweeper;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+
+/**
+ * Endless minefield with no width or height. The field is split into square
+ * chunks, each created the first time it is used from a hash of the seed and
+ * the chunk location, so any region can be recreated without storing it.
+ * Only a limited number of chunks are kept loaded, the least recently used
+ * are removed after each click. Chunks the player changed are shrunk to the
+ * spaces revealed and the few flags and marks before removal.
+ *
+ * @author  KnightMiner
+ */
+public class InfiniteBoard {
+
+    /** Size of chunks along each side, as a power of two */
+    public static final int CHUNK_BITS = 6;
+    /** Size of chunks along each side */
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Smallest mine density allowed. Below about this, areas of 0s connect
+     * without end and a single click would never finish opening
+     */
+    public static final double MIN_DENSITY = 0.1;
+
+    /**
+     * Most spaces a single click will open. Any 0s left at the edge still show
+     * and can be clicked to keep opening
+     */
+    public static final int MAX_OPEN = 1 << 22;
+
+    // mask to get the position inside a chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final Piece[] PIECES = Piece.values();
+
+    // field settings
+    private final long seed;
+    private final double density;
+    private final int maxChunks;
+
+    // loaded chunks by packed chunk location, in order of last use
+    private final LinkedHashMap<Long, Chunk> chunks = new LinkedHashMap<>(64, 0.75f, true);
+    // chunks changed by the player that are not loaded
+    private final Map<Long, ArchivedChunk> archived = new HashMap<>();
+
+    // last chunk used, most lookups are in the same chunk
+    private long lastKey;
+    private Chunk lastChunk;
+
+    // open areas of 0s, stored as pairs of x and y
+    private final IntQueue revealQueue = new IntQueue();
+
+    // true while handling a click, chunks are not removed until it finishes
+    private boolean clicking;
+
+    // game state
+    private boolean firstClick;
+    private int firstX, firstY;
+    private boolean gameOver;
+    private long revealed;
+    private long flagCount;
+
+    /**
+     * Creates a new endless minefield
+     * @param seed       Seed for the mine locations
+     * @param density    Chance of each space having a mine, at least MIN_DENSITY
+     * @param maxChunks  Most chunks to keep loaded at once, each takes about 4.7 KB
+     */
+    public InfiniteBoard(long seed, double density, int maxChunks) {
+        if(density < MIN_DENSITY || density >= 1) {
+            throw new IllegalArgumentException("Density must be at least " + MIN_DENSITY + " and below 1");
+        }
+
+        this.seed = seed;
+        this.density = density;
+        // one click touches at most 9 chunks, so always allow at least that many
+        this.maxChunks = Math.max(maxChunks, 9);
+    }
+
+
+    /* Clicking */
+
+    /**
+     * Handle standard game clicks. Cheats are not used on endless fields
+     * @param x       X value of the space clicked
+     * @param y       Y value of the space clicked
+     * @param action  Type of click
+     */
+    public void handleClick(int x, int y, ClickAction action) {
+        // stop playing when the game is over
+        if(gameOver) {
+            return;
+        }
+
+        clicking = true;
+        try {
+            switch(action) {
+                case DEFAULT:
+                    handleDefaultClick(x, y);
+                    break;
+                case FLAG:
+                    handleFlagClick(x, y);
+                    break;
+                case MARK:
+                    handleMarkClick(x, y);
+                    break;
+                case CHEAT:
+                    break;
+            }
+        }
+        finally {
+            clicking = false;
+        }
+
+        // drop chunks we are not using anymore
+        trimChunks();
+    }
+
+    /**
+     * Default clicks, clicks a space or the spaces around a number
+     * @param x  X value of the space clicked
+     * @param y  Y value of the space clicked
+     */
+    private void handleDefaultClick(int x, int y) {
+        // the first click decides where the mines cannot be
+        if(!firstClick) {
+            firstClick = true;
+            firstX = x;
+            firstY = y;
+        }
+
+        Piece piece = getPiece(x, y);
+        if(piece != null && piece.isNumber()) {
+            // count the flags around the piece
+            int flags = 0;
+            for(int j = y - 1; j <= y + 1; j++) {
+                for(int i = x - 1; i <= x + 1; i++) {
+                    if(getPiece(i, j) == Piece.FLAG) {
+                        flags++;
+                    }
+                }
+            }
+
+            // same number of flags as the piece number? click all the spaces
+            if(flags == piece.getNumber()) {
+                for(int j = y - 1; j <= y + 1; j++) {
+                    for(int i = x - 1; i <= x + 1; i++) {
+                        clickSpace(i, j);
+                    }
+                }
+            }
+        }
+        else {
+            clickSpace(x, y);
+        }
+    }
+
+    /**
+     * Space clicking core, does the actual clicking action
+     * @param x  X value of the space clicked
+     * @param y  Y value of the space clicked
+     */
+    private void clickSpace(int x, int y) {
+        Piece piece = getPiece(x, y);
+        if(piece != null && !piece.isReplaceable()) {
+            return;
+        }
+
+        // no mines to show on an endless board, so just show the one clicked
+        if(isMine(x, y)) {
+            setPiece(x, y, Piece.MINE_RED);
+            gameOver = true;
+            return;
+        }
+
+        // open any 0s, crossing into other chunks as needed
+        IntQueue queue = revealQueue;
+        queue.clear();
+        int opened = 0;
+        revealSpace(x, y, queue);
+        while(!queue.isEmpty() && opened < MAX_OPEN) {
+            int spaceX = queue.poll();
+            int spaceY = queue.poll();
+            for(int j = spaceY - 1; j <= spaceY + 1; j++) {
+                for(int i = spaceX - 1; i <= spaceX + 1; i++) {
+                    Piece neighbor = getPiece(i, j);
+                    if(neighbor == null || neighbor.isReplaceable()) {
+                        revealSpace(i, j, queue);
+                        opened++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets a safe space to its number, queueing it if it is a 0
+     * @param x      X value of the space
+     * @param y      Y value of the space
+     * @param queue  Queue of 0s to open
+     */
+    private void revealSpace(int x, int y, IntQueue queue) {
+        Piece number = getNumber(x, y);
+        setPiece(x, y, number);
+        if(number == Piece.N0) {
+            queue.add(x);
+            queue.add(y);
+        }
+    }
+
+    /**
+     * Flag clicks, essentially click once to add
+     * @param x  X value of the space clicked
+     * @param y  Y value of the space clicked
+     */
+    private void handleFlagClick(int x, int y) {
+        Piece piece = getPiece(x, y);
+        if(piece == Piece.FLAG) {
+            setPiece(x, y, Piece.MARK_RED);
+        }
+        else if(piece != null && piece.isMark()) {
+            setPiece(x, y, null);
+        }
+        else if(piece == null || piece.isReplaceable()) {
+            setPiece(x, y, Piece.FLAG);
+        }
+    }
+
+    /**
+     * Mark clicks, changes the color of a mark
+     * @param x  X value of the space clicked
+     * @param y  Y value of the space clicked
+     */
+    private void handleMarkClick(int x, int y) {
+        Piece piece = getPiece(x, y);
+        if(piece == Piece.MARK_RED) {
+            setPiece(x, y, Piece.MARK_GREEN);
+        }
+        else if(piece == Piece.MARK_GREEN) {
+            setPiece(x, y, Piece.MARK_BLUE);
+        }
+        else if(piece == Piece.MARK_BLUE || piece == Piece.FLAG || piece == null || piece.isReplaceable()) {
+            setPiece(x, y, Piece.MARK_RED);
+        }
+    }
+
+
+    /* Spaces */
+
+    /**
+     * Gets the piece on the specified space
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return the piece on the space, or null if empty
+     */
+    public Piece getPiece(int x, int y) {
+        int id = getChunk(x >> CHUNK_BITS, y >> CHUNK_BITS).cells[getLocalIndex(x, y)];
+        return id == 0 ? null : PIECES[id - 1];
+    }
+
+    /**
+     * Places a piece on a space
+     * @param x      X value of the space
+     * @param y      Y value of the space
+     * @param piece  Piece to place, or null to empty the space
+     */
+    private void setPiece(int x, int y, Piece piece) {
+        Chunk chunk = getChunk(x >> CHUNK_BITS, y >> CHUNK_BITS);
+        int index = getLocalIndex(x, y);
+        Piece old = chunk.cells[index] == 0 ? null : PIECES[chunk.cells[index] - 1];
+
+        // update counts
+        if(isNumber(old) != isNumber(piece)) {
+            revealed += isNumber(piece) ? 1 : -1;
+        }
+        if((old == Piece.FLAG) != (piece == Piece.FLAG)) {
+            flagCount += piece == Piece.FLAG ? 1 : -1;
+        }
+
+        chunk.cells[index] = (byte) (piece == null ? 0 : piece.ordinal() + 1);
+        chunk.touched = true;
+    }
+
+    /**
+     * Determines if a space contains a mine
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  true if the space contains a mine
+     */
+    public boolean isMine(int x, int y) {
+        // nothing near the first click
+        if(firstClick && Math.abs(x - firstX) <= 1 && Math.abs(y - firstY) <= 1) {
+            return false;
+        }
+
+        int index = getLocalIndex(x, y);
+        return (getChunk(x >> CHUNK_BITS, y >> CHUNK_BITS).mines[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Counts the mines around a space
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  the number piece for the space
+     */
+    private Piece getNumber(int x, int y) {
+        int count = 0;
+        for(int j = y - 1; j <= y + 1; j++) {
+            for(int i = x - 1; i <= x + 1; i++) {
+                if((i != x || j != y) && isMine(i, j)) {
+                    count++;
+                }
+            }
+        }
+        return PIECES[count];
+    }
+
+    /**
+     * Determines if a piece is a number
+     * @param piece  Piece to check, null if empty
+     * @return  true if the piece is a number
+     */
+    private static boolean isNumber(Piece piece) {
+        return piece != null && piece.isNumber();
+    }
+
+    /**
+     * Gets the index of a space inside its chunk
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  the index inside the chunk
+     */
+    private static int getLocalIndex(int x, int y) {
+        return ((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK);
+    }
+
+
+    /* Chunks */
+
+    /**
+     * Gets a chunk, loading or creating it if needed
+     * @param chunkX  X location of the chunk
+     * @param chunkY  Y location of the chunk
+     * @return  the chunk
+     */
+    private Chunk getChunk(int chunkX, int chunkY) {
+        long key = Space.pack(chunkX, chunkY);
+        if(lastChunk != null && key == lastKey) {
+            return lastChunk;
+        }
+
+        Chunk chunk = chunks.get(key);
+        if(chunk == null) {
+            chunk = new Chunk(generateMines(chunkX, chunkY));
+            chunks.put(key, chunk);
+
+            // if the player changed this chunk before, bring those changes back
+            ArchivedChunk saved = archived.remove(key);
+            if(saved != null) {
+                restore(chunk, saved, chunkX, chunkY);
+            }
+
+            // outside of clicks, such as drawing, keep under the limit right away
+            // the new chunk was used last so it will not be removed
+            if(!clicking) {
+                trimChunks();
+            }
+        }
+
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Places the mines in a chunk. Each chunk uses its own random seeded from
+     * the field seed and its location, so the result never changes
+     * @param chunkX  X location of the chunk
+     * @param chunkY  Y location of the chunk
+     * @return  mine bitset for the chunk
+     */
+    private long[] generateMines(int chunkX, int chunkY) {
+        SplittableRandom random = new SplittableRandom(hash(seed, chunkX, chunkY));
+        long[] mines = new long[CHUNK_SIZE * CHUNK_SIZE / 64];
+        for(int i = 0; i < CHUNK_SIZE * CHUNK_SIZE; i++) {
+            if(random.nextDouble() < density) {
+                mines[i >>> 6] |= 1L << i;
+            }
+        }
+        return mines;
+    }
+
+    /**
+     * Mixes a seed with a location into a well distributed value
+     * @param seed  Field seed
+     * @param x     X location
+     * @param y     Y location
+     * @return  hash of the three values
+     */
+    static long hash(long seed, int x, int y) {
+        long hash = seed ^ (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL);
+        // finalizer from SplitMix64
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Removes the least recently used chunks until under the limit.
+     * Not called during a click so chunks are never removed in the middle of one
+     */
+    private void trimChunks() {
+        Iterator<Map.Entry<Long, Chunk>> iterator = chunks.entrySet().iterator();
+        while(chunks.size() > maxChunks && iterator.hasNext()) {
+            Map.Entry<Long, Chunk> entry = iterator.next();
+            Chunk chunk = entry.getValue();
+
+            // untouched chunks can just be made again, others need their changes kept
+            if(chunk.touched) {
+                archived.put(entry.getKey(), new ArchivedChunk(chunk));
+            }
+            iterator.remove();
+        }
+        lastChunk = null;
+    }
+
+    /**
+     * Restores the changes to a chunk from when it was removed
+     * @param chunk   Newly created chunk
+     * @param saved   Changes to the chunk
+     * @param chunkX  X location of the chunk
+     * @param chunkY  Y location of the chunk
+     */
+    private void restore(Chunk chunk, ArchivedChunk saved, int chunkX, int chunkY) {
+        // numbers were not stored, as they can be counted again from the mines
+        // only the mines around are needed, so the other chunks are not loaded
+        long[][] area = new long[9][];
+        for(int j = -1; j <= 1; j++) {
+            for(int i = -1; i <= 1; i++) {
+                Chunk loaded = chunks.get(Space.pack(chunkX + i, chunkY + j));
+                area[(j + 1) * 3 + i + 1] = loaded != null ? loaded.mines : generateMines(chunkX + i, chunkY + j);
+            }
+        }
+
+        int startX = chunkX << CHUNK_BITS;
+        int startY = chunkY << CHUNK_BITS;
+        for(int index = 0; index < CHUNK_SIZE * CHUNK_SIZE; index++) {
+            if((saved.revealed[index >>> 6] & (1L << index)) != 0) {
+                int x = startX + (index & CHUNK_MASK);
+                int y = startY + (index >> CHUNK_BITS);
+                int count = 0;
+                for(int j = y - 1; j <= y + 1; j++) {
+                    for(int i = x - 1; i <= x + 1; i++) {
+                        if((i != x || j != y) && isMine(area, chunkX, chunkY, i, j)) {
+                            count++;
+                        }
+                    }
+                }
+                chunk.cells[index] = (byte) (count + 1);
+            }
+        }
+
+        // flags and marks are stored as index and piece
+        for(int other : saved.others) {
+            chunk.cells[other >>> 8] = (byte) other;
+        }
+        chunk.touched = true;
+    }
+
+    /**
+     * Determines if a space contains a mine using the mines around a chunk
+     * @param area    Mines of the chunk and the 8 chunks around it
+     * @param chunkX  X location of the center chunk
+     * @param chunkY  Y location of the center chunk
+     * @param x       X value of the space, must be in one of the 9 chunks
+     * @param y       Y value of the space, must be in one of the 9 chunks
+     * @return  true if the space contains a mine
+     */
+    private boolean isMine(long[][] area, int chunkX, int chunkY, int x, int y) {
+        // nothing near the first click
+        if(firstClick && Math.abs(x - firstX) <= 1 && Math.abs(y - firstY) <= 1) {
+            return false;
+        }
+
+        long[] mines = area[((y >> CHUNK_BITS) - chunkY + 1) * 3 + (x >> CHUNK_BITS) - chunkX + 1];
+        int index = getLocalIndex(x, y);
+        return (mines[index >>> 6] & (1L << index)) != 0;
+    }
+
+
+    /* Data */
+
+    /**
+     * Checks if the game ended
+     * @return  true if the game ended
+     */
+    public boolean gameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Gets the number of spaces revealed, the score on an endless board
+     * @return  the number of spaces showing a number
+     */
+    public long getRevealed() {
+        return revealed;
+    }
+
+    /**
+     * Gets the number of flags placed
+     * @return  the number of flags
+     */
+    public long getFlagCount() {
+        return flagCount;
+    }
+
+    /**
+     * Gets the number of chunks currently loaded
+     * @return  the number of loaded chunks
+     */
+    public int getLoadedChunks() {
+        return chunks.size();
+    }
+
+    /**
+     * Gets the number of changed chunks stored in their smaller form
+     * @return  the number of removed chunks with changes
+     */
+    public int getArchivedChunks() {
+        return archived.size();
+    }
+
+    /**
+     * Gets the seed for the field
+     * @return  the field seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * A loaded chunk of the field
+     */
+    private static class Chunk {
+        // both by y * CHUNK_SIZE + x
+        private final long[] mines;
+        private final byte[] cells = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        // true if the player changed anything
+        private boolean touched;
+
+        /**
+         * Creates a new chunk
+         * @param mines  Mine bitset for the chunk
+         */
+        public Chunk(long[] mines) {
+            this.mines = mines;
+        }
+    }
+
+    /**
+     * Changes to a chunk that is no longer loaded. Numbers are stored as a
+     * single bit as they can be counted again, leaving just flags and marks
+     */
+    private static class ArchivedChunk {
+        private final long[] revealed = new long[CHUNK_SIZE * CHUNK_SIZE / 64];
+        // index shifted left 8, or'ed with the cell value
+        private final int[] others;
+
+        /**
+         * Stores the changes to a chunk
+         * @param chunk  Chunk to store
+         */
+        public ArchivedChunk(Chunk chunk) {
+            int otherCount = 0;
+            for(int i = 0; i < chunk.cells.length; i++) {
+                int id = chunk.cells[i];
+                if(id != 0) {
+                    if(PIECES[id - 1].isNumber()) {
+                        revealed[i >>> 6] |= 1L << i;
+                    }
+                    else {
+                        otherCount++;
+                    }
+                }
+            }
+
+            others = new int[otherCount];
+            int next = 0;
+            for(int i = 0; i < chunk.cells.length; i++) {
+                int id = chunk.cells[i];
+                if(id != 0 && !PIECES[id - 1].isNumber()) {
+                    others[next] = (i << 8) | id;
+                    next++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package knightminer.minesweeper;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Simple first in first out queue of primitive integers, backed by a ring
+ * buffer that grows as needed. Used in place of a Queue of Integers or
+ * recursion so large boards do not create objects or overflow the stack.
+ *
+ * @author  KnightMiner
+ */
+class IntQueue {
+
+    // ring buffer, always a power of two long so we can mask the indexes
+    private int[] elements;
+    private int head, tail;
+
+    /**
+     * Creates a new queue with a default capacity
+     */
+    public IntQueue() {
+        this(64);
+    }
+
+    /**
+     * Creates a new queue with the specified starting capacity
+     * @param capacity  Starting capacity, will be rounded up to a power of two
+     */
+    public IntQueue(int capacity) {
+        this.elements = new int[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+    }
+
+    /**
+     * Adds a value to the end of the queue
+     * @param value  Value to add
+     */
+    public void add(int value) {
+        elements[tail] = value;
+        tail = (tail + 1) & (elements.length - 1);
+
+        // full? double the size
+        if(tail == head) {
+            grow();
+        }
+    }
+
+    /**
+     * Removes the value at the front of the queue
+     * @return  the value at the front of the queue
+     */
+    public int poll() {
+        if(head == tail) {
+            throw new NoSuchElementException();
+        }
+
+        int value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        return value;
+    }
+
+    /**
+     * Checks if the queue is empty
+     * @return  true if there are no values in the queue
+     */
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * Gets the number of values in the queue
+     * @return  the number of values in the queue
+     */
+    public int size() {
+        return (tail - head) & (elements.length - 1);
+    }
+
+    /**
+     * Removes all values from the queue
+     */
+    public void clear() {
+        head = tail = 0;
+    }
+
+    /**
+     * Doubles the size of the buffer, called when the buffer is full
+     */
+    private void grow() {
+        int length = elements.length;
+        int[] grown = new int[length << 1];
+
+        // copy from the head to the end, then from the start to the tail
+        int front = length - head;
+        System.arraycopy(elements, head, grown, 0, front);
+        System.arraycopy(elements, 0, grown, front, head);
+
+        elements = grown;
+        head = 0;
+        tail = length;
+    }
+}
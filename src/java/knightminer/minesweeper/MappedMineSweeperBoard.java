@@ -0,0 +1,851 @@
+package knightminer.minesweeper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * Minesweeper board played directly from a tiled save file, for boards too
+ * large to read into memory before showing. The file is mapped rather than
+ * read, so opening takes the same time for any size of board and only the
+ * parts of the board used are loaded, as the system pages them in.
+ * <p>
+ * The file starts with a fixed size header, followed by the board split into
+ * 64 by 64 tiles. Each tile is a byte for each space followed by a long of
+ * mines for each row, so every tile has a fixed offset. Each row of tiles is
+ * mapped the first time it is used. The mapping is private, so moves do not
+ * change the file until the game is saved, and saving to the same file writes
+ * back only the tiles changed since the last save.
+ * <p>
+ * Those writes first go into a log after the tiles, ending with the new
+ * header, and are only copied into place once the log is on disk. Opening a
+ * save finishes copying a complete log and drops one cut off part way, so a
+ * crash while saving leaves either the old or the new save, never tiles from
+ * one and counters from the other. Older versions ignore the log, so the
+ * version is unchanged.
+ * <p>
+ * Changes are taken from the board and written to the file in two steps.
+ * Taking them copies only the tiles changed, so it is quick enough to do
+ * between moves, while writing can be left to another thread. Each time
+ * changes are taken the revision in the header goes up, so the file can be
+ * matched with moves recorded elsewhere, such as by {@link AutoSave}.
+ * <p>
+ * Mines generated after loading, such as by a new game, are stored in memory
+ * like any other board and written into the tiles on the next save.
+ *
+ * @author  KnightMiner
+ */
+public class MappedMineSweeperBoard extends MineSweeperBoard implements Closeable {
+    private static final long serialVersionUID = 1L;
+
+    /** "MSWT" in ASCII, used to tell tiled saves apart from other formats */
+    public static final int MAGIC = 0x4D535754;
+    /** Current format version */
+    public static final int VERSION = 1;
+
+    /** Boards with at least this many spaces are saved in tiles */
+    public static final int MIN_SPACES = 1 << 24;
+
+    private static final Piece[] PIECES = Piece.values();
+
+    // tiles are 64 by 64 spaces, so each row of mines in a tile is one long
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    // a byte for each space, followed by the mines
+    private static final int MINES_OFFSET = TILE_SIZE * TILE_SIZE;
+    private static final int TILE_BYTES = MINES_OFFSET + TILE_SIZE * 8;
+
+    // space reserved for the header before the first tile, ending with the revision
+    private static final int HEADER_SIZE = 128;
+    private static final int REVISION_OFFSET = HEADER_SIZE - 8;
+
+    // spaces of a tile with nothing on them, shared by all changes taken
+    private static final byte[] EMPTY_TILE = new byte[MINES_OFFSET];
+
+    // "MSWL" in ASCII, starts a log of writes after the tiles
+    private static final int LOG_MAGIC = 0x4D53574C;
+    // magic, checksum, and length of the records that follow
+    private static final int LOG_HEADER = 16;
+    // position and length before the bytes of each record
+    private static final int RECORD_HEADER = 12;
+
+    // size of the buffer used to check and copy the log
+    private static final int COPY_SIZE = 1 << 16;
+    // bytes copied between progress updates when copying the save
+    private static final long COPY_STEP = 1 << 24;
+
+    // save being played, kept open to map more rows
+    private final transient Path path;
+    private final transient FileChannel channel;
+
+    // number of tiles across and down, and the bytes in each row of tiles
+    private final transient int tilesX, tilesY;
+    private final transient int rowBytes;
+
+    // end of the tiles, where the log is written
+    private final transient long logStart;
+
+    // rows of tiles mapped so far, null until first used
+    private final transient AtomicReferenceArray<MappedByteBuffer> rows;
+
+    // one bit per tile changed since the last save
+    private final transient long[] dirty;
+
+    // revision in the header, counted up each time changes are taken. Only
+    // used by the clicking thread, like the rest of the board
+    private transient long revision;
+
+    // header and mines as last taken, to tell when they need writing again
+    private transient byte[] takenHeader;
+    private transient long[] takenMines;
+
+    // changes taken but not yet written, guarded by this
+    private final transient List<Changes> unwritten = new ArrayList<>();
+    // held while writing to the file, so writes happen in the order taken
+    private final transient Object writeLock = new Object();
+
+    /**
+     * Creates a board from a tiled save. Use {@link #open(Path)}
+     * @param path           Save file
+     * @param channel        Channel to the save, open for reading and writing
+     * @param width          Width of the board
+     * @param height         Height of the board
+     * @param mineCount      Total mines
+     * @param cheatsAllowed  Cheats allowed
+     * @param placement      Method used to place the mines
+     * @param oracle         Hashed mines, or null if stored in the tiles
+     */
+    private MappedMineSweeperBoard(Path path, FileChannel channel, int width, int height, int mineCount,
+            int cheatsAllowed, Placement placement, MineOracle oracle) {
+        super(width, height, mineCount, cheatsAllowed, placement, oracle);
+        this.path = path;
+        this.channel = channel;
+        this.tilesX = tiles(width);
+        this.tilesY = tiles(height);
+        this.rowBytes = tilesX * TILE_BYTES;
+        this.logStart = logStart(width, height);
+        this.rows = new AtomicReferenceArray<>(tilesY);
+        this.dirty = new long[(tilesX * tilesY + 63) >>> 6];
+    }
+
+    /**
+     * Opens a tiled save. Only the header is read, the tiles are loaded as
+     * they are used
+     * @param path  Save file
+     * @return  the board
+     * @throws IOException  if the file cannot be read or is not valid
+     */
+    public static MappedMineSweeperBoard open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // the size is needed to find a log left by a save, so finish or
+            // drop it before reading the rest of the header
+            ByteBuffer size = ByteBuffer.allocate(14);
+            if(!readFully(channel, size, 0) || size.getInt(0) != MAGIC) {
+                throw new IOException("Not a tiled MineSweeper save");
+            }
+            checkSize(size.getInt(6), size.getInt(10));
+            replay(channel, logStart(size.getInt(6), size.getInt(10)));
+
+            SaveFormat.Input in = new SaveFormat.Input(channel);
+
+            // header
+            if(in.getInt() != MAGIC) {
+                throw new IOException("Not a tiled MineSweeper save");
+            }
+            int version = in.getShort();
+            if(version < 1 || version > VERSION) {
+                throw new IOException("Unsupported save version " + version);
+            }
+            int width = in.getInt();
+            int height = in.getInt();
+            checkSize(width, height);
+            int mineCount = in.getInt();
+            int flagCount = in.getInt();
+            int revealed = in.getInt();
+            int cheatsAllowed = in.getInt();
+            int cheats = in.getInt();
+            int status = in.getByte();
+            int placement = in.getByte();
+            if(placement >= SaveFormat.PLACEMENTS.length) {
+                throw new IOException("Unknown mine placement " + placement);
+            }
+            long seed = in.getLong();
+            MineOracle oracle = in.getByte() != 0 ? MineOracle.read(in, width, height) : null;
+
+            // the tiles are not read, but they must all be there
+            if(channel.size() < logStart(width, height)) {
+                throw new IOException("Save is missing tiles");
+            }
+
+            MappedMineSweeperBoard board = new MappedMineSweeperBoard(path, channel, width, height, mineCount,
+                    cheatsAllowed, SaveFormat.PLACEMENTS[placement], oracle);
+            board.restoreStatus(flagCount, revealed, cheats, (status & SaveFormat.GAME_OVER) != 0,
+                    (status & SaveFormat.VICTORY) != 0, (status & SaveFormat.STARTED) != 0, seed);
+
+            // saves before revisions were added have 0 there
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            board.takenHeader = header.array();
+            board.revision = header.getLong(REVISION_OFFSET);
+            return board;
+        }
+        catch(IOException|RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a whole board to a tiled save
+     * @param board     Board to write
+     * @param path      File to write to
+     * @param progress  Told how many spaces are written
+     * @throws IOException  if the file cannot be written
+     */
+    public static void write(MineSweeperBoard board, Path path, SaveFormat.Progress progress) throws IOException {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        checkSize(width, height);
+
+        // hashed mines are in the header, so leave the tiles empty
+        boolean tileMines = board.getOracle() == null;
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int tilesX = tiles(width);
+            ByteBuffer row = ByteBuffer.allocate(tilesX * TILE_BYTES);
+            for(int tileY = 0, top = 0; top < height; tileY++, top += TILE_SIZE) {
+                // every byte is set, so the buffer can be reused between rows
+                for(int left = 0; left < width; left += TILE_SIZE) {
+                    for(int y = top; y < top + TILE_SIZE; y++) {
+                        long mines = 0;
+                        for(int x = left; x < left + TILE_SIZE; x++) {
+                            int id = 0;
+                            if(x < width && y < height) {
+                                int index = y * width + x;
+                                Piece piece = board.getCell(index);
+                                id = piece == null ? 0 : piece.ordinal() + 1;
+                                if(tileMines && board.hasMine(index)) {
+                                    mines |= 1L << (x & TILE_MASK);
+                                }
+                            }
+                            row.put(cellOffset(x, y), (byte) id);
+                        }
+                        row.putLong(mineOffset(left, y), mines);
+                    }
+                }
+
+                row.clear();
+                long position = HEADER_SIZE + (long) tileY * row.capacity();
+                while(row.hasRemaining()) {
+                    position += channel.write(row, position);
+                }
+                progress.update((long) Math.min(top + TILE_SIZE, height) * width, (long) width * height);
+            }
+
+            writeFully(channel, ByteBuffer.wrap(header(board, 0)), 0);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Creates the header for a board
+     * @param board     Board to write
+     * @param revision  Revision of the file
+     * @return  the header, HEADER_SIZE bytes long
+     */
+    private static byte[] header(MineSweeperBoard board, long revision) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        SaveFormat.Output out = new SaveFormat.Output(Channels.newChannel(bytes));
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putInt(board.getWidth());
+        out.putInt(board.getHeight());
+        out.putInt(board.getMineCount());
+        out.putInt(board.getFlagCount());
+        out.putInt(board.getRevealed());
+        out.putInt(board.getCheatsAllowed());
+        out.putInt(board.getCheats());
+        out.putByte((board.gameOver() ? SaveFormat.GAME_OVER : 0) | (board.hasWon() ? SaveFormat.VICTORY : 0)
+                | (board.isGenerated() ? SaveFormat.STARTED : 0));
+        out.putByte(board.getPlacement().ordinal());
+        out.putLong(board.getSeed());
+
+        MineOracle oracle = board.getOracle();
+        out.putByte(oracle != null ? 1 : 0);
+        if(oracle != null) {
+            oracle.write(out);
+        }
+        out.flush();
+
+        byte[] header = Arrays.copyOf(bytes.toByteArray(), HEADER_SIZE);
+        ByteBuffer.wrap(header).putLong(REVISION_OFFSET, revision);
+        return header;
+    }
+
+    /**
+     * Gets the end of the tiles, where the log starts
+     * @param width   Width of the board
+     * @param height  Height of the board
+     * @return  the position of the log
+     */
+    private static long logStart(int width, int height) {
+        return HEADER_SIZE + (long) tiles(height) * tiles(width) * TILE_BYTES;
+    }
+
+    /**
+     * Checks that a board fits in a tiled save
+     * @param width   Width of the board
+     * @param height  Height of the board
+     * @throws IOException  if the board is too large
+     */
+    private static void checkSize(int width, int height) throws IOException {
+        if(width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IOException("Invalid board size " + width + "x" + height);
+        }
+        // each row of tiles is mapped as one buffer
+        if((long) tiles(width) * TILE_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Board is too wide for a tiled save");
+        }
+    }
+
+
+    /* Saving */
+
+    /**
+     * Saves the board. Saving to the file being played writes back only the
+     * changed tiles, any other file gets a copy of it
+     * @param filename  Location of the game
+     */
+    @Override
+    public void saveGame(String filename) {
+        try {
+            Path target = Paths.get(filename + ".bin");
+            takeChanges();
+            long before = SaveIndex.directoryTime(target);
+            writeSave(this, target, SaveFormat.Progress.NONE);
+            SaveIndex.update(target, before);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the tiles changed since the last save and the header to the
+     * file being played
+     * @throws IOException  if the file cannot be written
+     */
+    public void flush() throws IOException {
+        takeChanges();
+        writeChanges();
+    }
+
+    /**
+     * Takes the changes since they were last taken, to be written to the file
+     * by {@link #writeChanges()}. Runs in time based on the tiles changed,
+     * rather than the size of the board
+     * @return  the revision the file will have once the changes are written
+     */
+    public long takeChanges() {
+        int count = 0;
+        for(long word : dirty) {
+            count += Long.bitCount(word);
+        }
+
+        // mines generated since loading go into every tile
+        long[] mines = mineData();
+        boolean newMines = mines != null && mines != takenMines;
+        byte[] header;
+        try {
+            header = header(this, revision);
+            if(count == 0 && !newMines && Arrays.equals(header, takenHeader)) {
+                return revision;
+            }
+            header = header(this, revision + 1);
+        }
+        catch(IOException e) {
+            // only written to memory
+            throw new UncheckedIOException(e);
+        }
+
+        // copy the spaces of each changed tile. The mines in the mapped tiles
+        // are never changed, so they are left out in case newer ones are below
+        long[] positions = new long[count];
+        byte[][] cells = new byte[count][];
+        int i = 0;
+        int tiles = tilesX * tilesY;
+        for(int tile = nextDirty(0); tile < tiles; tile = nextDirty(tile + 1)) {
+            ByteBuffer row = row(tile / tilesX);
+            int start = (tile % tilesX) * TILE_BYTES;
+            positions[i] = HEADER_SIZE + (long) (tile / tilesX) * rowBytes + start;
+            cells[i] = copyTile(row, start);
+            i++;
+        }
+        Arrays.fill(dirty, 0);
+
+        revision++;
+        takenHeader = header;
+        takenMines = mines;
+        synchronized(this) {
+            unwritten.add(new Changes(positions, cells, newMines ? mines : null, header));
+        }
+        return revision;
+    }
+
+    /**
+     * Copies the spaces of a tile
+     * @param row    Row of tiles
+     * @param start  Offset of the tile in the row
+     * @return  the spaces, shared if empty as after a new game
+     */
+    private static byte[] copyTile(ByteBuffer row, int start) {
+        for(int i = 0; i < MINES_OFFSET; i++) {
+            if(row.get(start + i) != 0) {
+                byte[] cells = new byte[MINES_OFFSET];
+                ByteBuffer source = row.duplicate();
+                source.position(start);
+                source.get(cells);
+                return cells;
+            }
+        }
+        return EMPTY_TILE;
+    }
+
+    /**
+     * Writes all changes taken so far to the file through the log. Safe to
+     * call from any thread, such as to save in the background. If writing
+     * fails the changes are kept to write next time
+     * @throws IOException  if the file cannot be written
+     */
+    public void writeChanges() throws IOException {
+        synchronized(writeLock) {
+            List<Changes> changes;
+            synchronized(this) {
+                if(unwritten.isEmpty()) {
+                    return;
+                }
+                changes = new ArrayList<>(unwritten);
+            }
+
+            CRC32 crc = new CRC32();
+            channel.position(logStart + LOG_HEADER);
+            SaveFormat.Output out = new SaveFormat.Output(channel, crc);
+            for(Changes change : changes) {
+                for(int i = 0; i < change.positions.length; i++) {
+                    out.putLong(change.positions[i]);
+                    out.putInt(MINES_OFFSET);
+                    out.put(ByteBuffer.wrap(change.cells[i]));
+                }
+                if(change.mines != null) {
+                    logMines(out, change.mines);
+                }
+
+                // header last, so the counters match the tiles
+                out.putLong(0);
+                out.putInt(HEADER_SIZE);
+                out.put(ByteBuffer.wrap(change.header));
+            }
+            out.flush();
+
+            // the log only counts once its header is on disk
+            ByteBuffer logHeader = ByteBuffer.allocate(LOG_HEADER);
+            logHeader.putInt(LOG_MAGIC).putInt((int) crc.getValue()).putLong(channel.position() - logStart - LOG_HEADER);
+            logHeader.flip();
+            writeFully(channel, logHeader, logStart);
+            channel.force(false);
+
+            // copied into place the same way as after a crash
+            replay(channel, logStart);
+            synchronized(this) {
+                unwritten.subList(0, changes.size()).clear();
+            }
+        }
+    }
+
+    /**
+     * Copies the file being played to another file, once the changes taken so
+     * far are written. Nothing is written to the file while copying, so the
+     * copy holds those changes and nothing after
+     * @param target    File to write
+     * @param progress  Told how many bytes are copied
+     * @throws IOException  if either file cannot be used
+     */
+    void copyTo(Path target, SaveFormat.Progress progress) throws IOException {
+        synchronized(writeLock) {
+            writeChanges();
+            try(FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long done = 0;
+                while(done < logStart) {
+                    done += channel.transferTo(done, Math.min(COPY_STEP, logStart - done), out);
+                    progress.update(done, logStart);
+                }
+                out.force(false);
+            }
+        }
+    }
+
+    /**
+     * Checks if a file is the one being played
+     * @param file  File to check
+     * @return  true if the file is the save the board was opened from
+     * @throws IOException  if the file cannot be checked
+     */
+    boolean isPlayedFrom(Path file) throws IOException {
+        return Files.exists(file) && Files.isSameFile(file, path);
+    }
+
+    /**
+     * Gets the revision of the board, which the file has once all changes
+     * taken are written
+     * @return  the revision
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Gets the file the board is played from
+     * @return  the save file
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Adds mines to the log, as a record for each tile
+     * @param out    Log output
+     * @param mines  Bitset of mines
+     */
+    private void logMines(SaveFormat.Output out, long[] mines) throws IOException {
+        int width = getWidth();
+        int height = getHeight();
+        for(int top = 0; top < height; top += TILE_SIZE) {
+            for(int left = 0; left < width; left += TILE_SIZE) {
+                out.putLong(HEADER_SIZE + (long) (top >> TILE_SHIFT) * rowBytes + mineOffset(left, top));
+                out.putInt(TILE_SIZE * 8);
+                for(int y = top; y < top + TILE_SIZE; y++) {
+                    long bits = 0;
+                    for(int x = left; x < Math.min(left + TILE_SIZE, width) && y < height; x++) {
+                        int index = y * width + x;
+                        if((mines[index >>> 6] & (1L << index)) != 0) {
+                            bits |= 1L << (x & TILE_MASK);
+                        }
+                    }
+                    out.putLong(bits);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the records in a complete log into place, then removes the log.
+     * A log that is cut off or damaged was never started, so it is dropped
+     * @param channel   Channel to the save
+     * @param logStart  Position of the log, right after the tiles
+     * @return  true if a log was copied into place
+     * @throws IOException  if the file cannot be read or written
+     */
+    private static boolean replay(FileChannel channel, long logStart) throws IOException {
+        if(channel.size() <= logStart) {
+            return false;
+        }
+
+        // check the whole log before changing anything
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        boolean valid = readFully(channel, header, logStart) && header.getInt(0) == LOG_MAGIC;
+        long end = logStart + LOG_HEADER + header.getLong(8);
+        if(valid && end >= logStart + LOG_HEADER && end <= channel.size()) {
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_SIZE);
+            for(long position = logStart + LOG_HEADER; position < end; position += buffer.limit()) {
+                buffer.clear().limit((int) Math.min(COPY_SIZE, end - position));
+                readFully(channel, buffer, position);
+                crc.update(buffer.array(), 0, buffer.limit());
+            }
+            valid = (int) crc.getValue() == header.getInt(4);
+        }
+        else {
+            valid = false;
+        }
+
+        if(valid) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER);
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_SIZE);
+            long position = logStart + LOG_HEADER;
+            while(position < end) {
+                record.clear();
+                readFully(channel, record, position);
+                long target = record.getLong(0);
+                int length = record.getInt(8);
+                position += RECORD_HEADER;
+                if(target < 0 || length < 0 || target + length > logStart || position + length > end) {
+                    throw new IOException("Invalid log record at " + position);
+                }
+
+                for(int done = 0; done < length; done += buffer.limit()) {
+                    buffer.clear().limit(Math.min(COPY_SIZE, length - done));
+                    readFully(channel, buffer, position + done);
+                    buffer.flip();
+                    writeFully(channel, buffer, target + done);
+                }
+                position += length;
+            }
+            channel.force(false);
+        }
+
+        // replaying again is harmless, so no need to wait for this
+        channel.truncate(logStart);
+        return valid;
+    }
+
+    /**
+     * Reads until a buffer is full
+     * @param channel   Channel to read
+     * @param buffer    Buffer to fill
+     * @param position  Position in the file to read from
+     * @return  false if the file ended first
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the rest of a buffer
+     * @param channel   Channel to write
+     * @param buffer    Bytes to write
+     * @param position  Position in the file to write to
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Finds the next tile changed since the last save
+     * @param from  First tile to check
+     * @return  the next changed tile, or at least the tile count if none
+     */
+    private int nextDirty(int from) {
+        int word = from >>> 6;
+        if(word >= dirty.length) {
+            return from;
+        }
+        long bits = dirty[word] & (-1L << from);
+        while(bits == 0) {
+            word++;
+            if(word == dirty.length) {
+                return word << 6;
+            }
+            bits = dirty[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Closes the save file, first writing any changes already taken. Moves
+     * since are not saved. The board cannot be used after
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(writeLock) {
+            try {
+                writeChanges();
+            }
+            finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the board in memory, not tied to the save file
+     * @return  a copy of this board
+     */
+    @Override
+    public MineSweeperBoard copy() {
+        int spaces = getWidth() * getHeight();
+        byte[] cells = new byte[spaces];
+        for(int i = 0; i < spaces; i++) {
+            Piece piece = getCell(i);
+            cells[i] = (byte) (piece == null ? 0 : piece.ordinal() + 1);
+        }
+
+        // mines in memory never change, so they can be shared
+        long[] mines = mineData();
+        if(mines == null && getOracle() == null) {
+            mines = new long[(spaces + 63) >>> 6];
+            for(int i = 0; i < spaces; i++) {
+                if(hasMine(i)) {
+                    mines[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+
+        MineSweeperBoard copy = new MineSweeperBoard(getWidth(), getHeight(), getMineCount(), getCheatsAllowed());
+        copy.setPlacement(getPlacement());
+        copy.restore(cells, mines, getOracle(), getFlagCount(), getCheats(), gameOver(), hasWon(), isGenerated(), getSeed());
+        return copy;
+    }
+
+    /**
+     * Serializes a copy in memory, as the mapped file cannot be serialized
+     * @return  a copy of this board
+     */
+    private Object writeReplace() {
+        return copy();
+    }
+
+
+    /* Tile storage */
+
+    /**
+     * Gets the number of tiles needed to cover a length
+     * @param length  Number of spaces
+     * @return  the number of tiles
+     */
+    private static int tiles(int length) {
+        return (length + TILE_SIZE - 1) >> TILE_SHIFT;
+    }
+
+    /**
+     * Gets the offset of a space within its row of tiles
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  the offset of the space
+     */
+    private static int cellOffset(int x, int y) {
+        return (x >> TILE_SHIFT) * TILE_BYTES + ((y & TILE_MASK) << TILE_SHIFT) + (x & TILE_MASK);
+    }
+
+    /**
+     * Gets the offset of the long holding the mines for a row of a tile
+     * @param x  X value of any space in the tile
+     * @param y  Y value of the row
+     * @return  the offset of the mines
+     */
+    private static int mineOffset(int x, int y) {
+        return (x >> TILE_SHIFT) * TILE_BYTES + MINES_OFFSET + ((y & TILE_MASK) << 3);
+    }
+
+    /**
+     * Gets a row of tiles, mapping it on first use. Safe to call from several
+     * threads, as large areas may be opened in parallel
+     * @param tileY  Row of tiles
+     * @return  the mapped row
+     */
+    private ByteBuffer row(int tileY) {
+        MappedByteBuffer row = rows.get(tileY);
+        if(row == null) {
+            try {
+                row = channel.map(MapMode.PRIVATE, HEADER_SIZE + (long) tileY * rowBytes, rowBytes);
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException("Failed to load tiles from " + path, e);
+            }
+
+            // another thread may have mapped it first, and may have changed it
+            if(!rows.compareAndSet(tileY, null, row)) {
+                row = rows.get(tileY);
+            }
+        }
+        return row;
+    }
+
+    @Override
+    Piece getCell(int index) {
+        int x = index % getWidth();
+        int y = index / getWidth();
+        int id = row(y >> TILE_SHIFT).get(cellOffset(x, y));
+        return id == 0 ? null : PIECES[id - 1];
+    }
+
+    @Override
+    void setCell(int index, Piece piece) {
+        int x = index % getWidth();
+        int y = index / getWidth();
+        row(y >> TILE_SHIFT).put(cellOffset(x, y), (byte) (piece == null ? 0 : piece.ordinal() + 1));
+    }
+
+    @Override
+    void clearCells() {
+        ByteBuffer empty = ByteBuffer.allocate(MINES_OFFSET);
+        for(int tileY = 0; tileY < tilesY; tileY++) {
+            ByteBuffer row = row(tileY).duplicate();
+            for(int tileX = 0; tileX < tilesX; tileX++) {
+                row.position(tileX * TILE_BYTES);
+                empty.clear();
+                row.put(empty);
+            }
+        }
+        Arrays.fill(dirty, -1L);
+    }
+
+    @Override
+    void pieceChanged(int index, Piece old, Piece piece) {
+        super.pieceChanged(index, old, piece);
+
+        // changes from parallel reveals are reported here on one thread
+        int tile = (index / getWidth() >> TILE_SHIFT) * tilesX + (index % getWidth() >> TILE_SHIFT);
+        dirty[tile >>> 6] |= 1L << tile;
+    }
+
+    @Override
+    boolean hasMine(int index) {
+        // mines generated after loading are in memory
+        if(mineData() != null || getOracle() != null) {
+            return super.hasMine(index);
+        }
+
+        int x = index % getWidth();
+        int y = index / getWidth();
+        return (row(y >> TILE_SHIFT).getLong(mineOffset(x, y)) & (1L << x)) != 0;
+    }
+
+
+    /**
+     * Changes taken from the board, waiting to be written to the file
+     */
+    private static class Changes {
+        // position and spaces of each changed tile
+        private final long[] positions;
+        private final byte[][] cells;
+        // mines to write into every tile, or null if unchanged
+        private final long[] mines;
+        private final byte[] header;
+
+        private Changes(long[] positions, byte[][] cells, long[] mines, byte[] header) {
+            this.positions = positions;
+            this.cells = cells;
+            this.mines = mines;
+            this.header = header;
+        }
+    }
+}
@@ -1,4 +1,5 @@
 package knightminer.minesweeper;
+import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Insets;
 import java.awt.event.MouseEvent;
@@ -14,6 +15,9 @@ import javax.swing.SwingUtilities;
  * @author  KnightMiner
  */
 public class MineButton extends JButton implements MouseListener {
+    // opacity of the shading for the chance of a mine, out of 255
+    private static final int CHANCE_ALPHA = 128;
+
     private MineSweeperGui gui;
     private MineSweeperBoard board;
     private Space space;
@@ -46,6 +50,25 @@ public class MineButton extends JButton implements MouseListener {
         this.updatePiece();
     }
 
+    /**
+     * Moves the button to another board of the same size, such as for a new
+     * game in the same window
+     * @param board  Board now containing the space
+     */
+    public void setBoard(MineSweeperBoard board) {
+        this.board = board;
+        this.updatePiece();
+    }
+
+    /**
+     * Moves the button to another space, such as when the view scrolls
+     * @param space  Location of the button on the board
+     */
+    public void setSpace(Space space) {
+        this.space = space;
+        this.updatePiece();
+    }
+
     /**
      * Draws the button with its icon
      */
@@ -58,6 +81,14 @@ public class MineButton extends JButton implements MouseListener {
             return;
         }
 
+        // shade from green for safe to red for a mine
+        double chance = gui.getMineChance(space);
+        if(chance >= 0) {
+            Color color = Color.getHSBColor((float) (1 - chance) / 3, 1, 1);
+            g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), CHANCE_ALPHA));
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+
         // determine what we are drawing
         Piece piece = board.getPiece(space);
         if(piece != null && piece.getIcon() != null) {
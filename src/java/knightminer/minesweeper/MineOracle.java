@@ -0,0 +1,268 @@
+package knightminer.minesweeper;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Decides which spaces contain mines from a hash of the seed and the space,
+ * so no mines are stored and no placement is needed. Each space is a mine if
+ * its hash is below a threshold. The spaces around the first click are never
+ * mines.
+ * <p>
+ * The threshold either comes straight from the mine density, leaving the mine
+ * count close to the one requested, or is searched for so exactly the
+ * requested number of spaces fall below it.
+ *
+ * @author  KnightMiner
+ */
+public class MineOracle implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // hashes are cut down to 62 bits so the full range fits in a long
+    private static final long RANGE = 1L << 62;
+    // bits counted in each pass when searching for an exact threshold
+    private static final int RADIX_BITS = 16;
+
+    // board dimensions
+    private final int width, height;
+
+    // hash settings
+    private final long key;
+    private final long threshold;
+
+    // space clicked first, -1 if none
+    private final int clickedX, clickedY;
+
+    // number of mines below the threshold
+    private final int mineCount;
+
+    /**
+     * Creates a new oracle
+     * @param seed       Seed for the mines
+     * @param width      Width of the board
+     * @param height     Height of the board
+     * @param clicked    Index of the first click, or -1 for none
+     * @param mineCount  Number of mines requested
+     * @param exact      If true, searches for a threshold giving exactly
+     *                   mineCount mines. If false, uses the density directly
+     *                   and counts the resulting mines
+     */
+    public MineOracle(long seed, int width, int height, int clicked, int mineCount, boolean exact) {
+        this.width = width;
+        this.height = height;
+        this.key = mix(seed);
+        this.clickedX = clicked < 0 ? -1 : clicked % width;
+        this.clickedY = clicked < 0 ? -1 : clicked / width;
+
+        // spaces around the click are not part of the density
+        int available = width * height - countExcluded();
+        mineCount = Math.max(0, Math.min(mineCount, available));
+
+        if(exact) {
+            // negative means the count could not be reached exactly
+            long found = findThreshold(mineCount);
+            this.threshold = found < 0 ? -found - 1 : found;
+            this.mineCount = found < 0 ? countMines() : mineCount;
+        }
+        else {
+            // threshold is set, so we can count the real mines
+            this.threshold = (long) ((double) mineCount / Math.max(available, 1) * RANGE);
+            this.mineCount = countMines();
+        }
+    }
+
+    /**
+     * Creates an oracle from saved settings
+     */
+    private MineOracle(int width, int height, long key, long threshold, int clickedX, int clickedY, int mineCount) {
+        this.width = width;
+        this.height = height;
+        this.key = key;
+        this.threshold = threshold;
+        this.clickedX = clickedX;
+        this.clickedY = clickedY;
+        this.mineCount = mineCount;
+    }
+
+    /**
+     * Creates an oracle with no mines, used before the first click
+     * @param width   Width of the board
+     * @param height  Height of the board
+     * @return  an oracle with no mines
+     */
+    public static MineOracle empty(int width, int height) {
+        // a threshold of 0 holds no mines, so there is nothing to count
+        return new MineOracle(width, height, 0, 0, -1, -1, 0);
+    }
+
+    /**
+     * Determines if a space contains a mine
+     * @param index  Index of the space, y * width + x
+     * @return  true if the space contains a mine
+     */
+    public boolean isMine(int index) {
+        // check the hash first so the division only happens for mines
+        return getValue(index) < threshold && !isExcluded(index % width, index / width);
+    }
+
+    /**
+     * Determines if a space contains a mine
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  true if the space contains a mine
+     */
+    public boolean isMine(int x, int y) {
+        return getValue(y * width + x) < threshold && !isExcluded(x, y);
+    }
+
+    /**
+     * Gets the number of mines on the board
+     * @return  the number of mines
+     */
+    public int getMineCount() {
+        return mineCount;
+    }
+
+    /**
+     * Writes the oracle settings to a save
+     * @param out  Save output
+     * @throws IOException  if the save cannot be written
+     */
+    void write(SaveFormat.Output out) throws IOException {
+        out.putLong(key);
+        out.putLong(threshold);
+        out.putInt(clickedX);
+        out.putInt(clickedY);
+        out.putInt(mineCount);
+    }
+
+    /**
+     * Reads oracle settings from a save, so the threshold is not searched again
+     * @param in      Save input
+     * @param width   Width of the board
+     * @param height  Height of the board
+     * @return  the oracle
+     * @throws IOException  if the save cannot be read
+     */
+    static MineOracle read(SaveFormat.Input in, int width, int height) throws IOException {
+        long key = in.getLong();
+        long threshold = in.getLong();
+        int clickedX = in.getInt();
+        int clickedY = in.getInt();
+        int mineCount = in.getInt();
+        return new MineOracle(width, height, key, threshold, clickedX, clickedY, mineCount);
+    }
+
+    /**
+     * Mixes all bits of a value into all the bits of the result.
+     * This is the finalizer from SplitMix64
+     * @param value  Value to mix
+     * @return  the mixed value
+     */
+    public static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+
+    /* Internal */
+
+    /**
+     * Gets the hash of a space
+     * @param index  Index of the space
+     * @return  a value from 0 up to RANGE
+     */
+    private long getValue(int index) {
+        return mix(key + index * 0x9E3779B97F4A7C15L) >>> 2;
+    }
+
+    /**
+     * Checks if a space is next to the first click
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  true if the space cannot be a mine
+     */
+    private boolean isExcluded(int x, int y) {
+        return clickedX >= 0 && Math.abs(x - clickedX) <= 1 && Math.abs(y - clickedY) <= 1;
+    }
+
+    /**
+     * Counts the spaces on the board next to the first click
+     * @return  the number of excluded spaces
+     */
+    private int countExcluded() {
+        if(clickedX < 0) {
+            return 0;
+        }
+        int columns = Math.min(clickedX + 1, width - 1) - Math.max(clickedX - 1, 0) + 1;
+        int rows = Math.min(clickedY + 1, height - 1) - Math.max(clickedY - 1, 0) + 1;
+        return columns * rows;
+    }
+
+    /**
+     * Counts the mines on the board by checking every space
+     * @return  the number of mines
+     */
+    private int countMines() {
+        int count = 0;
+        for(int index = 0; index < width * height; index++) {
+            if(isMine(index)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds a threshold so exactly the requested number of spaces are below it.
+     * Each pass counts the hashes in the remaining range by their next 16 bits,
+     * then narrows the range down to the part containing the last mine.
+     * Normally two passes are enough
+     * @param mines  Number of mines wanted
+     * @return  the threshold. If hashes were equal so the count cannot be
+     *          reached exactly, returns -1 minus the closest lower threshold
+     */
+    private long findThreshold(int mines) {
+        if(mines == 0) {
+            return 0;
+        }
+
+        int[] counts = new int[1 << RADIX_BITS];
+        long low = 0;
+        long span = RANGE;
+        int needed = mines;
+        while(true) {
+            // size of each bucket in this pass
+            int shift = Math.max(Long.numberOfTrailingZeros(span) - RADIX_BITS, 0);
+            Arrays.fill(counts, 0);
+            for(int index = 0; index < width * height; index++) {
+                long value = getValue(index) - low;
+                if(value >= 0 && value < span && !isExcluded(index % width, index / width)) {
+                    counts[(int) (value >>> shift)]++;
+                }
+            }
+
+            // everything in buckets before the last mine is a mine
+            int bucket = 0;
+            while(needed > counts[bucket]) {
+                needed -= counts[bucket];
+                bucket++;
+            }
+
+            // end of a bucket? we found it
+            if(needed == counts[bucket]) {
+                return low + ((long) (bucket + 1) << shift);
+            }
+
+            // single values left but still too many, hashes matched
+            if(shift == 0) {
+                return -(low + bucket) - 1;
+            }
+
+            low += (long) bucket << shift;
+            span = 1L << shift;
+        }
+    }
+}
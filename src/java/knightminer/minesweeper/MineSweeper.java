@@ -1,5 +1,10 @@
 package knightminer.minesweeper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
 /**
@@ -12,6 +17,19 @@ public class MineSweeper {
     // currently running instance of the game
     private static MineSweeperGui gui;
 
+    // saves the current game as it is played, so it can be recovered after a crash
+    private static final Path AUTOSAVE = Paths.get("autosave");
+    private static AutoSave autoSave;
+
+    // if true, new games need no guessing
+    private static boolean noGuess;
+
+    // if true, hidden spaces are shaded by their chance of a mine
+    private static boolean showChances;
+
+    // boards of each preset difficulty with the mines ready
+    private static final BoardPool pool = new BoardPool();
+
     /**
      * Primary way to boot the game
      * @param args  Default args (unused)
@@ -29,8 +47,43 @@ public class MineSweeper {
         // this has a side effect of loading the icons for the pieces
         Help.load();
 
-        // start the game on easy
-        newGame(Difficulty.EASY);
+        // write the last moves before exiting
+        Runtime.getRuntime().addShutdownHook(new Thread(MineSweeper::stopAutoSave));
+
+        // continue the last game if it did not finish, otherwise start on easy
+        MineSweeperBoard board = recoverGame();
+        if(board != null) {
+            startGame(board);
+        }
+        else {
+            newGame(Difficulty.EASY);
+        }
+    }
+
+    /**
+     * Offers to recover the game from the last session
+     * @return  the recovered board, or null if there is none or it was declined
+     */
+    private static MineSweeperBoard recoverGame() {
+        try {
+            if(!AutoSave.exists(AUTOSAVE)) {
+                return null;
+            }
+
+            int result = JOptionPane.showConfirmDialog(null,
+                    "Continue the game from the last session?",
+                    "MineSweeper", JOptionPane.YES_NO_OPTION);
+            if(result == JOptionPane.YES_OPTION) {
+                return AutoSave.recover(AUTOSAVE);
+            }
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null,
+                    "Error recovering the last game",
+                    "MineSweeper", JOptionPane.ERROR_MESSAGE);
+        }
+        return null;
     }
 
     /**
@@ -38,24 +91,13 @@ public class MineSweeper {
      * @param difficulty Game difficulty
      */
     public static void newGame(Difficulty difficulty) {
-        // difficulty switch
-        MineSweeperBoard board = null;
-        switch(difficulty) {
-            case EASY:
-                board = new MineSweeperBoard(9, 9, 10, 0);
-                break;
-            case NORMAL:
-                board = new MineSweeperBoard(16, 16, 40, 1);
-                break;
-            case HARD:
-                board = new MineSweeperBoard(30, 16, 99, 3);
-                break;
-            case CUSTOM:
-                board = customGame();
-                break;
-        }
-
-        startGame(board);
+        // presets come ready from the pool, custom sizes are asked for
+        if(difficulty.isPreset()) {
+            startGame(pool.take(difficulty));
+        }
+        else {
+            startGame(customGame());
+        }
     }
 
     /**
@@ -85,6 +127,9 @@ public class MineSweeper {
     public static void startGame(MineSweeperBoard board) {
         // must be a valid board
         if(board != null) {
+            // only matters if the first click was not made yet
+            board.setNoGuess(noGuess);
+
             // remove the current gui and define the new one
             if(gui != null) {
                 gui.dispose();
@@ -92,6 +137,97 @@ public class MineSweeper {
 
             // create a new instance
             gui = new MineSweeperGui(board);
+
+            // and save the new game as it is played
+            startAutoSave(board);
+        }
+    }
+
+    /**
+     * Takes a ready board of a preset difficulty to play in the current
+     * window, and saves it as it is played
+     * @param difficulty  Preset difficulty of the board
+     * @return  the board to play
+     */
+    public static MineSweeperBoard takeBoard(Difficulty difficulty) {
+        MineSweeperBoard board = pool.take(difficulty);
+        board.setNoGuess(noGuess);
+        startAutoSave(board);
+        return board;
+    }
+
+    /**
+     * Checks if new games need no guessing
+     * @return  true if no guessing mode is enabled
+     */
+    public static boolean isNoGuess() {
+        return noGuess;
+    }
+
+    /**
+     * Sets if new games, and the current game if not yet started, need no guessing
+     * @param noGuess  true to enable no guessing mode
+     */
+    public static void setNoGuess(boolean noGuess) {
+        MineSweeper.noGuess = noGuess;
+        pool.setNoGuess(noGuess);
+    }
+
+    /**
+     * Checks if hidden spaces are shaded by their chance of a mine
+     * @return  true if the chances are shown
+     */
+    public static boolean isShowChances() {
+        return showChances;
+    }
+
+    /**
+     * Sets if hidden spaces are shaded by their chance of a mine, kept for
+     * new games
+     * @param showChances  true to show the chances
+     */
+    public static void setShowChances(boolean showChances) {
+        MineSweeper.showChances = showChances;
+    }
+
+    /**
+     * Starts saving a game as it is played, replacing the last autosave
+     * @param board  Board to save
+     */
+    private static synchronized void startAutoSave(MineSweeperBoard board) {
+        stopAutoSave();
+        try {
+            autoSave = AutoSave.start(board, AUTOSAVE, MineSweeper::autoSaveFailed);
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tells the player the game is no longer saved as it is played. Called
+     * on the autosave thread
+     * @param error  Error writing the autosave
+     */
+    private static void autoSaveFailed(IOException error) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(gui,
+                "Error saving the game as it is played: " + error.getMessage()
+                        + "\nThe game will not be recovered if MineSweeper closes, save it to keep it",
+                "MineSweeper", JOptionPane.ERROR_MESSAGE));
+    }
+
+    /**
+     * Stops saving the current game, writing any moves left
+     */
+    private static synchronized void stopAutoSave() {
+        if(autoSave != null) {
+            try {
+                autoSave.close();
+            }
+            catch(IOException e) {
+                e.printStackTrace();
+            }
+            autoSave = null;
         }
     }
 
@@ -100,23 +236,66 @@ public class MineSweeper {
      */
     public enum Difficulty {
         /** Easy game */
-        EASY("Easy"),
+        EASY("Easy", 9, 9, 10, 0),
         /** Normal game */
-        NORMAL("Normal"),
+        NORMAL("Normal", 16, 16, 40, 1),
         /** Hard game */
-        HARD("Expert"),
+        HARD("Expert", 30, 16, 99, 3),
         /** Custom size and mines from the GUI */
-        CUSTOM("Custom");
+        CUSTOM("Custom", 0, 0, 0, 0);
 
         // data
         private String label;
+        private int width, height, mineCount, cheats;
 
         /**
          * Default constructor
-         * @param  Button label
+         * @param label      Button label
+         * @param width      Width of the board, or 0 if custom
+         * @param height     Height of the board, or 0 if custom
+         * @param mineCount  Total mines
+         * @param cheats     Cheats allowed
          */
-        Difficulty(String label) {
+        Difficulty(String label, int width, int height, int mineCount, int cheats) {
             this.label = label;
+            this.width = width;
+            this.height = height;
+            this.mineCount = mineCount;
+            this.cheats = cheats;
+        }
+
+        /**
+         * Checks if this difficulty has a fixed size
+         * @return  true unless custom
+         */
+        public boolean isPreset() {
+            return width > 0;
+        }
+
+        /**
+         * Creates an empty board of this difficulty
+         * @return  a new board, or null if custom
+         */
+        public MineSweeperBoard createBoard() {
+            if(!isPreset()) {
+                return null;
+            }
+            return new MineSweeperBoard(width, height, mineCount, cheats);
+        }
+
+        /**
+         * Finds the preset difficulty matching a board
+         * @param board  Board to check
+         * @return  the difficulty with the same size and mines, or CUSTOM if none match
+         */
+        public static Difficulty of(MineSweeperBoard board) {
+            for(Difficulty difficulty : values()) {
+                if(difficulty.width == board.getWidth() && difficulty.height == board.getHeight()
+                        && difficulty.mineCount == board.getMineCount()) {
+                    return difficulty;
+                }
+            }
+            return CUSTOM;
         }
 
         /**
@@ -1,13 +1,18 @@
 package knightminer.minesweeper;
 
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 /**
  * Contains all the visible pieces in the MineSweeper game
@@ -16,23 +21,95 @@ import java.util.Random;
  */
 public class MineSweeperBoard implements Serializable {
 
+    // kept at the value of the original layout so older saves still load
+    private static final long serialVersionUID = -7364977713520921457L;
+
     /**
      * Random number generator used to create game seeds
      * Minefields use a sepparate object created using a specific seed
      */
     public static final Random RANDOM = new Random();
 
-    // resizable
-    private transient Queue<Space> update;
+    /**
+     * Cached piece values, as Piece.values() creates a new array each call
+     */
+    private static final Piece[] PIECES = Piece.values();
+
+    // number of 0s opened one at a time before the rest of the area is
+    // opened in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    // most space changes kept for undo by default, 8 bytes each
+    private static final int JOURNAL_CAPACITY = 1 << 20;
+
+    // shared by boards with no move listeners
+    private static final MoveListener[] NO_LISTENERS = new MoveListener[0];
+
+    // offsets to the 8 neighbors of a space
+    private static final int[] NEIGHBOR_X = {-1, -1, -1,  0, 0,  1, 1, 1};
+    private static final int[] NEIGHBOR_Y = {-1,  0,  1, -1, 1, -1, 0, 1};
+
+    // spaces changed since the display last updated
+    private transient UpdateSet update;
+
+    // work queue for opening areas of 0s
+    private transient IntQueue revealQueue;
+
+    // if true, large areas of 0s are opened using all cores
+    // a runtime setting, so it is not saved with the board
+    private transient boolean parallelReveal;
+
+    // if true, the first click picks a seed that needs no guessing
+    // only decides the seed, so it is not saved with the board
+    private transient boolean noGuess;
+
+    // if true, the mines were placed for the opening space before the first
+    // click, and only need moving to the space clicked
+    private transient boolean prepared;
+
+    // changes made by recent moves for undo and redo, null if disabled
+    private transient MoveJournal journal;
+
+    // told about each move, such as to record a replay
+    private transient MoveListener[] listeners;
+
+    // records moves for a replay, null if not recording
+    private transient ReplayRecorder recorder;
+
+    // number of changes made to spaces, used to tell if a click did anything
+    private transient long changeCount;
+
+    // offsets from the index of a space to the index of each neighbor
+    private transient int[] neighborOffsets;
+
+    // neighbor callbacks, stored so visiting neighbors creates no objects
+    private transient IntPredicate isFlag;
+    private transient IntPredicate isMineAt;
+    private transient IntConsumer clickNeighbor;
+    private transient IntConsumer revealNeighbor;
 
     // board dimensions
     private int width, height;
     private int mineCount;
     private int flagCount;
 
-    // board data
-    private Piece[][] pieces;
-    private boolean[][] mines;
+    // number of spaces showing a number, once this reaches the number of safe
+    // spaces the game is won
+    private transient int revealed;
+
+    // board data, both stored flat by y * width + x
+    // cells hold the piece ordinal plus one, so 0 is an empty space
+    // mines are a bitset, 64 spaces to a long
+    private byte[] cells;
+    private long[] mineBits;
+
+    // number of mines around each space, two spaces to a byte
+    // mines only change when generated, so this is counted once after that
+    private transient byte[] numbers;
+
+    // decides mines for hashed placements, replacing mineBits and numbers
+    private MineOracle oracle;
+
     private boolean gameOver;
     private boolean victory;
 
@@ -46,6 +123,9 @@ public class MineSweeperBoard implements Serializable {
     // board seed
     private long seed;
 
+    // how the seed places mines
+    private Placement placement = Placement.SAMPLED;
+
     /**
      * Creates a new minesweaper board with the specified dimensions
      * @param width      Width of the board
@@ -57,14 +137,14 @@ public class MineSweeperBoard implements Serializable {
         this.width = width;
         this.height = height;
 
-        this.pieces = new Piece[height][width];
-        this.mines = new boolean[height][width];
+        this.cells = new byte[width * height];
 
         // sanity check in case the GUI fails to correct the number
         this.mineCount = Math.min(mineCount, width * height - 9);
         this.cheatsAllowed = this.cheats = cheats;
 
-        update = new LinkedList<>();
+        clearMines();
+        createTransientData();
     }
 
     /**
@@ -77,18 +157,138 @@ public class MineSweeperBoard implements Serializable {
         this(width, height, mineCount, 1);
     }
 
+    /**
+     * Creates a board whose spaces are stored by a subclass, used for saves
+     * that are not read into memory
+     * @param width          Width of the board
+     * @param height         Height of the board
+     * @param mineCount      Total mines
+     * @param cheatsAllowed  Cheats allowed
+     * @param placement      Method used to place the mines
+     * @param oracle         Hashed mines, or null if the subclass stores them
+     */
+    MineSweeperBoard(int width, int height, int mineCount, int cheatsAllowed, Placement placement, MineOracle oracle) {
+        this.width = width;
+        this.height = height;
+        this.mineCount = mineCount;
+        this.cheatsAllowed = this.cheats = cheatsAllowed;
+        this.placement = placement;
+        this.oracle = oracle;
+
+        createTransientData();
+    }
+
+    /**
+     * Creates a copy of another board
+     * @param other  Board to copy
+     */
+    private MineSweeperBoard(MineSweeperBoard other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.mineCount = other.mineCount;
+        this.flagCount = other.flagCount;
+        this.revealed = other.revealed;
+        this.cells = other.cells.clone();
+
+        // mines are never changed once generated, only replaced, so they
+        // can be shared
+        this.mineBits = other.mineBits;
+        this.numbers = other.numbers;
+        this.oracle = other.oracle;
+
+        this.gameOver = other.gameOver;
+        this.victory = other.victory;
+        this.firstClick = other.firstClick;
+        this.cheatsAllowed = other.cheatsAllowed;
+        this.cheats = other.cheats;
+        this.seed = other.seed;
+        this.placement = other.placement;
+
+        createTransientData();
+        this.parallelReveal = other.parallelReveal;
+        this.noGuess = other.noGuess;
+        this.prepared = other.prepared;
+        update.markAll();
+    }
+
+    /**
+     * Creates a copy of this board with the same spaces and mines. Moves made
+     * on the copy do not affect this board. The copy has nothing to undo
+     * @return  a copy of this board
+     */
+    public MineSweeperBoard copy() {
+        return new MineSweeperBoard(this);
+    }
+
 
 
     /* Main logic */
 
     /**
-     * Populates the board with mines with a random seed
+     * Populates the board with mines with a random seed. In no guessing mode,
+     * the seed is the first one found that can be cleared from the space
+     * clicked without guessing
      * @param space  Space clicked
      */
     public void generateMines(Space space) {
-        generateMines(RANDOM.nextLong(), space);
+        // mines placed ahead of time are moved to the click, as long as they
+        // still need no guessing from there
+        boolean wasPrepared = prepared;
+        prepared = false;
+        if(wasPrepared && isValid(space)
+                && (!noGuess || NoGuessGenerator.isSolvable(this, getIndex(space), this.seed))) {
+            shiftMines(getOpening(), space);
+            countNumbers();
+            return;
+        }
+
+        long seed = RANDOM.nextLong();
+        if(noGuess && isValid(space)) {
+            seed = NoGuessGenerator.findSeed(this, getIndex(space), seed);
+        }
+        generateMines(seed, space);
+    }
+
+    /**
+     * Generates the mines as if the first click already happened, so a
+     * recorded game plays out the same
+     * @param seed     Seed for the mines
+     * @param clicked  Index of the first click, or -1 for none
+     */
+    void startGame(long seed, int clicked) {
+        generateMines(seed, getSpace(clicked));
+        firstClick = true;
+    }
+
+    /**
+     * Places the mines before the first click, as if the opening space was
+     * clicked, so the first click only has to move them. In no guessing mode
+     * this is where the seed is searched for, so it can be done ahead of time
+     * @param searchers  Pool to search for the seed in
+     * @throws IllegalStateException  if the placement is not SHIFTED, as the
+     *         mines would change with the click
+     */
+    void prepareMines(ForkJoinPool searchers) {
+        if(placement != Placement.SHIFTED) {
+            throw new IllegalStateException("Only shifted mines can be placed before the first click");
+        }
+        Space opening = getOpening();
+        long seed = RANDOM.nextLong();
+        if(noGuess) {
+            seed = NoGuessGenerator.findSeed(this, getIndex(opening), seed, searchers);
+        }
+        generateMines(seed, opening);
+        prepared = true;
     }
 
+    /**
+     * Gets the space shifted placements are generated around, in the middle
+     * of the board
+     * @return  the opening space
+     */
+    private Space getOpening() {
+        return getSpace(getIndex(width / 2, height / 2));
+    }
     /**
      * Populates the board with mines
      * @param seed  Seed to generate mines. Two fields with the same size and
@@ -98,39 +298,213 @@ public class MineSweeperBoard implements Serializable {
     protected void generateMines(long seed, Space clicked) {
         // store the current seed for saving games
         this.seed = seed;
+        this.prepared = false;
+
+        // hashed mines are decided on demand, so there is nothing to place
+        if(placement.isHashed()) {
+            this.oracle = new MineOracle(seed, width, height, getIndex(clicked), mineCount,
+                    placement == Placement.HASHED_EXACT);
+            this.mineBits = null;
+            this.numbers = null;
+            return;
+        }
+        this.oracle = null;
 
         // no mines? no work
         if(mineCount == 0) {
             return;
         }
 
-        // list of spaces we can still place a mine at
-        List<Space> remainingSpaces = new ArrayList<>(Arrays.asList(getAllSpaces()));
+        // shifted mines are placed around the opening, then moved to the click
+        Space origin = clicked;
+        if(placement == Placement.SHIFTED && clicked != null) {
+            origin = getOpening();
+        }
 
-        // if we clicked somewhere, remove all nearby spaces
-        if(clicked != null) {
-            // remove all unclickable spaces
-            final int x = clicked.getX(), y = clicked.getY();
-            remainingSpaces.removeIf((space) -> {
-                return (y-1) <= space.getY() && space.getY() <= (y+1)
-                    && (x-1) <= space.getX() && space.getX() <= (x+1);
-            });
+        // spaces around the click cannot have a mine, sorted by index
+        int[] excluded = new int[9];
+        int excludedCount = 0;
+        if(origin != null) {
+            int x = origin.getX(), y = origin.getY();
+            for(int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                for(int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                    excluded[excludedCount] = getIndex(i, j);
+                    excludedCount++;
+                }
+            }
         }
 
         // random object seeded so results can be controlled
         Random random = new Random(seed);
 
         // place mines
-        this.mines = new boolean[height][width];
-        for(int i = 0; i < mineCount; i++) {
-            // just get the linear location of the next mine and place it
-            int mine = random.nextInt(remainingSpaces.size());
-            Space space = remainingSpaces.get(mine);
-            mines[space.getY()][space.getX()] = true;
+        this.mineBits = new long[words(width * height)];
+        int available = width * height - excludedCount;
+        if(placement == Placement.LEGACY) {
+            placeMinesLegacy(random, available, excluded, excludedCount);
+        }
+        else {
+            // Floyd's algorithm: picks mineCount distinct spaces using one
+            // random number each, no matter how large the board is
+            for(int j = available - mineCount; j < available; j++) {
+                int mine = getAvailableIndex(random.nextInt(j + 1), excluded, excludedCount);
+
+                // already used? then the newest space is guaranteed to be free
+                if(hasMine(mine)) {
+                    mine = getAvailableIndex(j, excluded, excludedCount);
+                }
+                setMine(mine);
+            }
+        }
+
+        if(origin != clicked) {
+            shiftMines(origin, clicked);
+        }
+
+        // finally, count the numbers for all spaces
+        countNumbers();
+    }
+
+    /**
+     * Moves every mine by the distance between two spaces, wrapping around
+     * the edges, so the spaces around the first end up around the second.
+     * Numbers must be counted again after.
+     * <p>
+     * Near an edge, some of the spaces kept free around the first space wrap
+     * around to the far side of the board. Only the spaces really next to
+     * the second space need to stay free, so the wrapped spaces are added
+     * back one at a time by reservoir sampling, which leaves every other
+     * space the same chance of a mine as {@link Placement#SAMPLED}
+     * @param from  Space the mines were placed around
+     * @param to    Space to move to
+     */
+    private void shiftMines(Space from, Space to) {
+        int dx = Math.floorMod(to.getX() - from.getX(), width);
+        int dy = Math.floorMod(to.getY() - from.getY(), height);
+        if(dx == 0 && dy == 0) {
+            return;
+        }
+
+        long[] shifted = new long[mineBits.length];
+        for(int word = 0; word < mineBits.length; word++) {
+            long bits = mineBits[word];
+            while(bits != 0) {
+                int mine = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int x = (mine % width + dx) % width;
+                int y = (mine / width + dy) % height;
+                int index = y * width + x;
+                shifted[index >>> 6] |= 1L << index;
+            }
+        }
+        this.mineBits = shifted;
+
+        // seeded from the seed alone, so placing before the first click
+        // gives the same mines as placing on it
+        Random random = new Random(MineOracle.mix(seed));
+        int fx = from.getX(), fy = from.getY();
+        int tx = to.getX(), ty = to.getY();
+        int available = width * height
+                - (Math.min(fx + 1, width - 1) - Math.max(fx - 1, 0) + 1)
+                * (Math.min(fy + 1, height - 1) - Math.max(fy - 1, 0) + 1);
+        for(int j = Math.max(fy - 1, 0); j <= Math.min(fy + 1, height - 1); j++) {
+            for(int i = Math.max(fx - 1, 0); i <= Math.min(fx + 1, width - 1); i++) {
+                int x = (i + dx) % width;
+                int y = (j + dy) % height;
+                if(Math.abs(x - tx) <= 1 && Math.abs(y - ty) <= 1) {
+                    continue;
+                }
+
+                // the space takes a mine as often as any other, from a
+                // mine picked at random
+                available++;
+                int pick = random.nextInt(available);
+                if(pick < mineCount) {
+                    int mine = findMine(pick);
+                    mineBits[mine >>> 6] &= ~(1L << mine);
+                    int index = y * width + x;
+                    mineBits[index >>> 6] |= 1L << index;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds a mine by its position among all mines
+     * @param n  Position of the mine, from 0
+     * @return  the index of the mine
+     */
+    private int findMine(int n) {
+        for(int word = 0; ; word++) {
+            long bits = mineBits[word];
+            int count = Long.bitCount(bits);
+            if(n < count) {
+                for(; n > 0; n--) {
+                    bits &= bits - 1;
+                }
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            n -= count;
+        }
+    }
+
+    /**
+     * Places mines in the same order as the original list based generation,
+     * so seeds from older versions give the same board. Rather than removing
+     * from a list of spaces, a tree of counts finds the remaining space
+     * at a position in log time.
+     * @param random         Seeded random to place mines
+     * @param available      Number of spaces that can have a mine
+     * @param excluded       Sorted indexes of spaces that cannot have a mine
+     * @param excludedCount  Number of excluded spaces
+     */
+    private void placeMinesLegacy(Random random, int available, int[] excluded, int excludedCount) {
+        // binary indexed tree, each available space starts with a count of 1
+        int[] tree = new int[available + 1];
+        for(int i = 1; i <= available; i++) {
+            tree[i]++;
+            int parent = i + (i & -i);
+            if(parent <= available) {
+                tree[parent] += tree[i];
+            }
+        }
+
+        int remaining = available;
+        int top = Integer.highestOneBit(available);
+        for(int m = 0; m < mineCount; m++) {
+            // find the position of the nth remaining space
+            int target = random.nextInt(remaining) + 1;
+            int position = 0;
+            for(int step = top; step > 0; step >>= 1) {
+                int next = position + step;
+                if(next <= available && tree[next] < target) {
+                    position = next;
+                    target -= tree[next];
+                }
+            }
+            setMine(getAvailableIndex(position, excluded, excludedCount));
 
             // remove the space so we don't hit it twice
-            remainingSpaces.remove(mine);
+            for(int i = position + 1; i <= available; i += i & -i) {
+                tree[i]--;
+            }
+            remaining--;
+        }
+    }
+
+    /**
+     * Converts a position among the spaces that can have a mine into an index
+     * @param position       Position, skipping over excluded spaces
+     * @param excluded       Sorted indexes of spaces that cannot have a mine
+     * @param excludedCount  Number of excluded spaces
+     * @return  the index of the space
+     */
+    private static int getAvailableIndex(int position, int[] excluded, int excludedCount) {
+        int index = position;
+        for(int i = 0; i < excludedCount && excluded[i] <= index; i++) {
+            index++;
         }
+        return index;
     }
 
     /**
@@ -138,14 +512,34 @@ public class MineSweeperBoard implements Serializable {
      */
     public void newGame() {
         // first, regenerate the mines
-        this.mines = new boolean[height][width];
+        clearMines();
 
         // next, clear game specific data
         resetData();
 
         // then mark all spaces for a rendering update
-        for(Space space : getAllSpaces()) {
-            markUpdate(space);
+        update.markAll();
+
+        // a new game is a new replay
+        for(MoveListener listener : listeners) {
+            listener.cleared();
+        }
+    }
+
+    /**
+     * Removes all mines from the board until they are next generated
+     */
+    private void clearMines() {
+        prepared = false;
+        if(placement.isHashed()) {
+            this.oracle = MineOracle.empty(width, height);
+            this.mineBits = null;
+            this.numbers = null;
+        }
+        else {
+            this.oracle = null;
+            this.mineBits = new long[words(width * height)];
+            this.numbers = new byte[nibbles(width * height)];
         }
     }
 
@@ -166,8 +560,10 @@ public class MineSweeperBoard implements Serializable {
         firstClick = true;
 
         // and mark all spaces for an update
-        for(Space space : getAllSpaces()) {
-            markUpdate(space);
+        update.markAll();
+
+        for(MoveListener listener : listeners) {
+            listener.restarted();
         }
     }
 
@@ -176,48 +572,280 @@ public class MineSweeperBoard implements Serializable {
      * @param filename  Location of the game
      */
     public void saveGame(String filename) {
-        // TODO: better saving logic
         try {
-            FileOutputStream file = new FileOutputStream(filename + ".bin");
-            ObjectOutputStream stream = new ObjectOutputStream(file);
-            stream.writeObject(this);
-            stream.flush();
-            stream.close();
+            Path path = Paths.get(filename + ".bin");
+            long before = SaveIndex.directoryTime(path);
+            writeSave(this, path, SaveFormat.Progress.NONE);
+            SaveIndex.update(path, this, before);
         }
         catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a board to a save file. Huge boards are saved in tiles, so they
+     * can be loaded without reading the whole file. The save is written to a
+     * temporary file first and renamed once complete, so a failed or canceled
+     * save leaves any previous save as it was.
+     * <p>
+     * Boards played from a tiled save only write the changes already taken
+     * from them, which is all a save to the same file needs. Other files get
+     * a copy of it, so nothing is read from the board itself and it can be
+     * played while saving
+     * @param board     Board to save
+     * @param path      File to write
+     * @param progress  Told how many spaces are written
+     * @throws IOException  if the file cannot be written
+     */
+    static void writeSave(MineSweeperBoard board, Path path, SaveFormat.Progress progress) throws IOException {
+        // replacing the file being played would leave the board mapping the old one
+        MappedMineSweeperBoard mapped = board instanceof MappedMineSweeperBoard ? (MappedMineSweeperBoard) board : null;
+        if(mapped != null && mapped.isPlayedFrom(path)) {
+            mapped.writeChanges();
+            return;
+        }
+
+        Path absolute = path.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            if(mapped != null) {
+                mapped.copyTo(temp, progress);
+            }
+            else if(board.width * board.height >= MappedMineSweeperBoard.MIN_SPACES) {
+                MappedMineSweeperBoard.write(board, temp, progress);
+            }
+            else {
+                SaveFormat.write(board, temp, progress);
+            }
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException|RuntimeException e) {
+            try {
+                Files.deleteIfExists(temp);
+            }
+            catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
         }
     }
 
 
     /**
-     * Load the board from a binary file
+     * Load the board from a binary file. Reads both the current formats and
+     * games saved with Java serialization by older versions. Tiled saves are
+     * played from the file, so they load without reading the spaces
      * @param filename  Location of the game
      * @return  The board, or null if invalid
      */
     public static MineSweeperBoard loadGame(String filename) {
         try {
-            FileInputStream file = new FileInputStream(filename + ".bin");
-            ObjectInputStream stream = new ObjectInputStream(file);
-            MineSweeperBoard board = (MineSweeperBoard) stream.readObject();
-            stream.close();
-            return board;
+            return readSave(Paths.get(filename + ".bin"), SaveFormat.Progress.NONE);
         }
-        catch (IOException|ClassNotFoundException e) {
+        catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Reads a board from a save file in any of the formats
+     * @param path      File to read
+     * @param progress  Told how many spaces are read
+     * @return  the board
+     * @throws IOException  if the file cannot be read or is not a save
+     */
+    static MineSweeperBoard readSave(Path path, SaveFormat.Progress progress) throws IOException {
+        int magic = SaveFormat.readMagic(path);
+        if(magic == SaveFormat.MAGIC) {
+            return SaveFormat.read(path, progress);
+        }
+        if(magic == MappedMineSweeperBoard.MAGIC) {
+            return MappedMineSweeperBoard.open(path);
+        }
+
+        // older saves
+        try(ObjectInputStream stream = new ObjectInputStream(new FileInputStream(path.toFile()))) {
+            return (MineSweeperBoard) stream.readObject();
+        }
+        catch (ClassNotFoundException|ClassCastException e) {
+            throw new IOException("Not a MineSweeper save: " + path, e);
+        }
+    }
+
+    /**
+     * Restores the board from saved data, replacing the current game
+     * @param cells       Saved spaces, as piece ordinal plus one
+     * @param mineBits    Mine bitset, or null if hashed or not generated
+     * @param oracle      Hashed mines, or null if stored in the bitset
+     * @param flagCount   Number of flags placed
+     * @param cheats      Cheats remaining
+     * @param gameOver    True if the game ended
+     * @param victory     True if the game was won
+     * @param firstClick  True if the mines were generated
+     * @param seed        Seed of the mines
+     */
+    void restore(byte[] cells, long[] mineBits, MineOracle oracle, int flagCount, int cheats,
+            boolean gameOver, boolean victory, boolean firstClick, long seed) {
+        this.cells = cells;
+        // without either the mines were never generated, so keep the empty ones
+        if(mineBits != null || oracle != null) {
+            this.mineBits = mineBits;
+            this.oracle = oracle;
+            countNumbers();
+        }
+
+        int revealed = 0;
+        for(int i = 0; i < cells.length; i++) {
+            if(isNumber(getCell(i))) {
+                revealed++;
+            }
+        }
+        restoreStatus(flagCount, revealed, cheats, gameOver, victory, firstClick, seed);
+    }
+
+    /**
+     * Restores the counters and game status from saved data
+     * @param flagCount   Number of flags placed
+     * @param revealed    Number of spaces showing a number
+     * @param cheats      Cheats remaining
+     * @param gameOver    True if the game ended
+     * @param victory     True if the game was won
+     * @param firstClick  True if the mines were generated
+     * @param seed        Seed of the mines
+     */
+    void restoreStatus(int flagCount, int revealed, int cheats, boolean gameOver, boolean victory,
+            boolean firstClick, long seed) {
+        this.flagCount = flagCount;
+        this.revealed = revealed;
+        this.cheats = cheats;
+        this.gameOver = gameOver;
+        this.victory = victory;
+        this.firstClick = firstClick;
+        this.seed = seed;
+        this.prepared = false;
+
+        update.markAll();
+        if(journal != null) {
+            journal.clear();
+        }
+    }
+
+    /**
+     * Reads the board from a stream, converting boards saved with the old
+     * two dimensional arrays into the flat layout
+     * @param stream  Stream to read from
+     */
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = stream.readFields();
+        width = fields.get("width", 0);
+        height = fields.get("height", 0);
+        mineCount = fields.get("mineCount", 0);
+        flagCount = fields.get("flagCount", 0);
+        gameOver = fields.get("gameOver", false);
+        victory = fields.get("victory", false);
+        firstClick = fields.get("firstClick", false);
+        cheatsAllowed = fields.get("cheatsAllowed", 0);
+        cheats = fields.get("cheats", 0);
+        seed = fields.get("seed", 0L);
+
+        // saves from before placement options used the legacy generation
+        placement = (Placement) fields.get("placement", Placement.LEGACY);
+        if(placement == null) {
+            placement = Placement.LEGACY;
+        }
+
+        // current layout
+        cells = (byte[]) fields.get("cells", null);
+        mineBits = (long[]) fields.get("mineBits", null);
+        oracle = (MineOracle) fields.get("oracle", null);
+
+        // old layout, copy the arrays over row by row
+        if(cells == null || (mineBits == null && oracle == null)) {
+            Piece[][] oldPieces = (Piece[][]) fields.get("pieces", null);
+            boolean[][] oldMines = (boolean[][]) fields.get("mines", null);
+            if(oldPieces == null || oldMines == null) {
+                throw new IOException("Board is missing its spaces");
+            }
+
+            cells = new byte[width * height];
+            mineBits = new long[words(width * height)];
+            for(int y = 0; y < height; y++) {
+                for(int x = 0; x < width; x++) {
+                    int index = getIndex(x, y);
+                    setCell(index, oldPieces[y][x]);
+                    if(oldMines[y][x]) {
+                        setMine(index);
+                    }
+                }
+            }
+        }
+
+        // not saved, so recreate it. Counting uses the neighbor offsets
+        createTransientData();
+        countNumbers();
+        for(int i = 0; i < cells.length; i++) {
+            if(isNumber(getCell(i))) {
+                revealed++;
+            }
+        }
+    }
+
+    /**
+     * Creates all data that is not saved with the board
+     */
+    private void createTransientData() {
+        update = new UpdateSet(width, height);
+
+        // no point splitting work with only one core
+        parallelReveal = ForkJoinPool.getCommonPoolParallelism() > 1;
+        journal = new MoveJournal(this, JOURNAL_CAPACITY);
+        listeners = NO_LISTENERS;
+
+        // created here rather than on the first reveal, as concurrent boards
+        // reveal numbers from several threads at once
+        revealQueue = new IntQueue();
+
+        // neighbor offsets depend on the width
+        neighborOffsets = new int[8];
+        for(int i = 0; i < 8; i++) {
+            neighborOffsets[i] = NEIGHBOR_Y[i] * width + NEIGHBOR_X[i];
+        }
+
+        isFlag = (index) -> getCell(index) == Piece.FLAG;
+        isMineAt = this::hasMine;
+        clickNeighbor = this::clickSpace;
+        revealNeighbor = (index) -> {
+            if(isReplaceable(getCell(index))) {
+                revealSpace(index, revealQueue);
+            }
+        };
+    }
+
     /**
      * Resets generic data
      */
     private void resetData() {
-        this.pieces = new Piece[height][width];
+        clearCells();
         gameOver = false;
         firstClick = false;
         cheats = cheatsAllowed;
         flagCount = 0;
+        revealed = 0;
         victory = false;
+
+        // the old moves no longer apply
+        if(journal != null) {
+            journal.clear();
+        }
+    }
+
+    /**
+     * Empties every space on the board
+     */
+    void clearCells() {
+        this.cells = new byte[width * height];
     }
 
     /**
@@ -226,6 +854,14 @@ public class MineSweeperBoard implements Serializable {
      * @return  Mine clicked
      */
     public void loseGame(Space clicked) {
+        loseGame(getIndex(clicked));
+    }
+
+    /**
+     * Ends the game with a loss
+     * @param clicked  Index of the space clicked causing the loss, or -1 for none
+     */
+    private void loseGame(int clicked) {
         // set the game to over
         gameOver = true;
 
@@ -236,57 +872,51 @@ public class MineSweeperBoard implements Serializable {
      * Checks if the game has been won, and sets the appropiate statuses
      */
     public void checkVictory() {
-        // check all spaces
-        for(Space space : getAllSpaces()) {
-
-            // only spaces without mines need to be checked, we don't care about
-            // flags or marks on mine spaces
-            if(!isMine(space)) {
-                // if the piece is unclicked or not a number, we failed
-                Piece piece = getPiece(space);
-                if(piece == null || !piece.isNumber()) {
-                    return;
-                }
-            }
+        // only spaces without mines need to be numbers, we don't care about
+        // flags or marks on mine spaces. Numbers are never placed on mines,
+        // so its enough to know how many numbers there are
+        if(getHiddenSafeSpaces() > 0) {
+            return;
         }
 
         // made it through that? we won
         victory = true;
         gameOver = true;
 
-        showMines(null, true);
+        showMines(-1, true);
     }
 
     /**
      * Shows all the mines on the board
-     * @param space    Space that was clicked
+     * @param clicked  Index of the space that was clicked, or -1 for none
      * @param victory  Determines if the game was won or lost
      */
-    private void showMines(Space clicked, boolean victory) {
+    private void showMines(int clicked, boolean victory) {
         // set the mine color based on victory
         Piece mine = victory ? Piece.MINE_GREEN : Piece.MINE;
 
         // set the clicked space to red
-        if(clicked != null && isMine(clicked)) {
+        if(clicked >= 0 && hasMine(clicked)) {
             setPiece(clicked, Piece.MINE_RED);
         }
 
         // show mines on the board
-        for(Space space : getAllSpaces()) {
-            if(space.equals(clicked)) {
+        int spaces = width * height;
+        for(int index = 0; index < spaces; index++) {
+            if(index == clicked) {
                 continue;
             }
-            Piece piece = getPiece(space);
-            if(isMine(space)) {
+            Piece piece = getCell(index);
+            if(hasMine(index)) {
                 // but only on empty or marks
                 if(piece == null || piece.isMark()) {
-                    setPiece(space, mine);
+                    setPiece(index, mine);
                 }
             }
             else {
                 // if the space has a flag but no mine, mark it as such
                 if(piece == Piece.FLAG) {
-                    setPiece(space, Piece.FLAG_NOT);
+                    setPiece(index, Piece.FLAG_NOT);
                 }
             }
         }
@@ -301,94 +931,228 @@ public class MineSweeperBoard implements Serializable {
      * @param action  Type of click
      */
     public void handleClick(Space space, ClickAction action) {
+        handleClick(getIndex(space), action);
+    }
+
+    /**
+     * Handle standard game clicks
+     * @param index   Index of the space clicked, from getIndex()
+     * @param action  Type of click
+     */
+    public void handleClick(int index, ClickAction action) {
         // stop playing when the game is over
-        if(gameOver) {
+        if(gameOver || !isValid(index)) {
             return;
         }
+
+        // record the move so it can be undone
+        int state = getState();
+        long changes = changeCount;
+        if(journal != null) {
+            journal.beginMove(state);
+        }
+
         // simply passes it along to the dedicated function
         switch(action) {
             case DEFAULT:
-                handleDefaultClick(space);
+                handleDefaultClick(index);
                 break;
             case FLAG:
-                handleFlagClick(space);
+                handleFlagClick(index);
                 break;
             case MARK:
-                handleMarkClick(space);
+                handleMarkClick(index);
                 break;
             case CHEAT:
-                handleCheatClick(space);
+                handleCheatClick(index);
                 break;
         }
+
+        int newState = getState();
+        if(journal != null) {
+            journal.endMove(newState);
+        }
+
+        // clicks that did nothing are left out of replays
+        if(changeCount != changes || newState != state) {
+            for(MoveListener listener : listeners) {
+                listener.clicked(index, action);
+            }
+        }
+    }
+
+    /**
+     * Undoes the last move, restoring the spaces, cheats, and game status
+     * from before it. Runs in time based on the number of spaces changed
+     * @return  true if a move was undone
+     */
+    public boolean undo() {
+        if(journal == null || !journal.canUndo()) {
+            return false;
+        }
+
+        restoreState(journal.undo());
+        for(MoveListener listener : listeners) {
+            listener.undone();
+        }
+        return true;
+    }
+
+    /**
+     * Redoes the last undone move. Any new move after an undo stops the undone
+     * moves from being redone
+     * @return  true if a move was redone
+     */
+    public boolean redo() {
+        if(journal == null || !journal.canRedo()) {
+            return false;
+        }
+
+        restoreState(journal.redo());
+        for(MoveListener listener : listeners) {
+            listener.redone();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if there is a move to undo
+     * @return  true if a move can be undone
+     */
+    public boolean canUndo() {
+        return journal != null && journal.canUndo();
+    }
+
+    /**
+     * Checks if there is an undone move to redo
+     * @return  true if a move can be redone
+     */
+    public boolean canRedo() {
+        return journal != null && journal.canRedo();
+    }
+
+    /**
+     * Sets the number of space changes kept for undo, 8 bytes each. Once
+     * full, the oldest moves can no longer be undone. Clears the current moves
+     * @param capacity  Number of changes to keep, or 0 to disable undo
+     */
+    public void setJournalCapacity(int capacity) {
+        journal = capacity > 0 ? new MoveJournal(this, capacity) : null;
+    }
+
+    /**
+     * Gets the parts of the board state a move can change, other than the
+     * spaces themselves
+     * @return  the cheats and game status packed into an int
+     */
+    private int getState() {
+        return cheats << 2 | (gameOver ? 2 : 0) | (victory ? 1 : 0);
+    }
+
+    /**
+     * Restores the board state from getState()
+     * @param state  Packed cheats and game status
+     */
+    private void restoreState(int state) {
+        cheats = state >>> 2;
+        gameOver = (state & 2) != 0;
+        victory = (state & 1) != 0;
+    }
+
+    /**
+     * Places a piece from the journal, without recording it as a new change
+     * @param index  Index of the space
+     * @param id     Piece ordinal plus one, or 0 for empty
+     */
+    void restorePiece(int index, int id) {
+        setPiece(index, id == 0 ? null : PIECES[id - 1]);
     }
 
     /**
      * Space clicking core, does the actual clicking action
-     * @param space  Space clicked
+     * @param index  Index of the space clicked
      */
-    private void clickSpace(Space space) {
+    private void clickSpace(int index) {
         // if the space is not replaceable, stop now
         // called here so we don't click flags as they are mines
-        if(!isReplaceable(space)) {
+        if(!isReplaceable(getCell(index))) {
             return;
         }
 
         // if the space is a mine, we lose
-        if(isMine(space)) {
-            loseGame(space);
+        if(hasMine(index)) {
+            loseGame(index);
         }
 
         // otherwise do a normal click
         else {
-            // sets the piece to the number of surrounding mines
-            Piece newPiece = getNumber(space);
-            setPiece(space, newPiece);
-
-            // if the piece is 0, update surrounding pieces as none of them are mines
-            // this won't eternally recur since this space is no longer clickable
-            if(newPiece == Piece.N0) {
-                for(Space neighbor : getNeighbors(space)) {
-                    clickSpace(neighbor);
-                }
+            reveal(index);
+        }
+    }
+
+    /**
+     * Reveals a safe space, and if it is a 0 all the connected spaces around it.
+     * Uses a queue rather than recursion so large open areas cannot overflow
+     * the stack, with the same result as clicking every neighbor of each 0.
+     * @param start  Index of the space to reveal, must not contain a mine
+     */
+    private void reveal(int start) {
+        // reused between clicks so we don't create one each time
+        IntQueue queue = revealQueue;
+
+        // any 0 is added to the queue to open its neighbors
+        revealSpace(start, queue);
+        int opened = 0;
+        while(!queue.isEmpty()) {
+            // large areas finish opening across all cores
+            if(parallelReveal && opened >= PARALLEL_THRESHOLD) {
+                new ParallelReveal(this, queue).run();
+                break;
             }
+
+            // none of the neighbors are mines, as the space is a 0
+            forEachNeighbor(queue.poll(), revealNeighbor);
+            opened++;
+        }
+    }
+
+    /**
+     * Sets a safe space to its number, queueing it if it is a 0.
+     * Setting the number first ensures each space is only queued once
+     * @param index  Index of the space
+     * @param queue  Queue of 0s to open
+     */
+    private void revealSpace(int index, IntQueue queue) {
+        Piece number = getNumber(index);
+        setPiece(index, number);
+        if(number == Piece.N0) {
+            queue.add(index);
         }
     }
 
     /**
      * Default clicks, clicks a space and displays a number or loses the game
-     * @param space  Space clicked
+     * @param index  Index of the space clicked
      */
-    private void handleDefaultClick(Space space) {
+    private void handleDefaultClick(int index) {
         // first click should generate the minefield
         if(!firstClick) {
-            firstClick(space);
+            firstClick(index);
         }
 
         // if the space cannot be replaced then stop here
         // as we run this function on every click
-        if(isNumber(space)) {
+        Piece piece = getCell(index);
+        if(isNumber(piece)) {
             // if the number of flags around this space is the same as the number
-            Space[] neighbors = getNeighbors(space);
-
-            // count the flags around the piece
-            int flags = 0;
-            for(Space neighbor : neighbors) {
-                if(getPiece(neighbor) == Piece.FLAG) {
-                    flags++;
-                }
-            }
-
-            // same number of flags as the piece number?
-            if(flags == getPiece(space).getNumber()) {
+            if(countNeighbors(index, isFlag) == piece.getNumber()) {
                 // click all the spaces. This is a risky move if a flag is wrong
-                for(Space neighbor : neighbors) {
-                    clickSpace(neighbor);
-                }
+                forEachNeighbor(index, clickNeighbor);
             }
         }
         // otherwise if not a number, just click the space
         else {
-            clickSpace(space);
+            clickSpace(index);
         }
 
         // check just once at the end of clicking
@@ -398,71 +1162,72 @@ public class MineSweeperBoard implements Serializable {
     /**
      * Handle the first click in the game. This click will generate the
      * minefield as it cannot be on a mine
-     * @param space  Space clicked
+     * @param index  Index of the space clicked, or -1 for none
      */
-    private void firstClick(Space space) {
-        generateMines(space);
+    private void firstClick(int index) {
+        generateMines(getSpace(index));
         firstClick = true;
+
+        for(MoveListener listener : listeners) {
+            listener.started(index);
+        }
     }
 
     /**
      * Flag clicks, essentially click once to add
-     * @param space  Space clicked
+     * @param index  Index of the space clicked
      */
-    private void handleFlagClick(Space space) {
+    private void handleFlagClick(int index) {
         // if already a flag, set a mark
-        Piece piece = getPiece(space);
+        Piece piece = getCell(index);
         if(piece == Piece.FLAG) {
-            setPiece(space, Piece.MARK_RED);
-            flagCount--;
+            setPiece(index, Piece.MARK_RED);
         }
         // remove marks
         else if(piece != null && piece.isMark()) {
-            setPiece(space, null);
+            setPiece(index, null);
         }
         // otherwise if we can add one
-        else if(isReplaceable(space)) {
-            setPiece(space, Piece.FLAG);
-            flagCount++;
+        else if(isReplaceable(piece)) {
+            setPiece(index, Piece.FLAG);
         }
     }
 
     /**
      * Mark clicks, changes the color of a mark
-     * @param space  Space clicked
+     * @param index  Index of the space clicked
      */
-    private void handleMarkClick(Space space) {
+    private void handleMarkClick(int index) {
         // tobble the mark
-        Piece piece = getPiece(space);
+        Piece piece = getCell(index);
         if(piece == Piece.MARK_RED) {
-            setPiece(space, Piece.MARK_GREEN);
+            setPiece(index, Piece.MARK_GREEN);
         }
         // remove marks
         else if(piece == Piece.MARK_GREEN) {
-            setPiece(space, Piece.MARK_BLUE);
+            setPiece(index, Piece.MARK_BLUE);
         }
         // otherwise if we can add one
         else if(piece == Piece.MARK_BLUE) {
-            setPiece(space, Piece.MARK_RED);
+            setPiece(index, Piece.MARK_RED);
         }
 
         // if its a flag, remove it
         else if(piece == Piece.FLAG) {
-            setPiece(space, Piece.MARK_RED);
-            flagCount--;
+            setPiece(index, Piece.MARK_RED);
         }
 
         // essentially all that is left here is null, but still
-        else if(isReplaceable(space)) {
-            setPiece(space, Piece.MARK_RED);
+        else if(isReplaceable(piece)) {
+            setPiece(index, Piece.MARK_RED);
         }
     }
 
     /**
      * Cheat clicks, click a space and it will show a "ghost" bomb if one exists
-     * @param space  Space clicked
+     * @param index  Index of the space clicked
      */
-    private void handleCheatClick(Space space) {
+    private void handleCheatClick(int index) {
         // already ran, don't run again
         if(!canCheat()) {
             return;
@@ -472,22 +1237,22 @@ public class MineSweeperBoard implements Serializable {
         if(!firstClick) {
             // you cheated for the first click, useless move as now we don't care
             // about click protection
-            firstClick(null);
+            firstClick(-1);
         }
 
         // only marks and empty spaces can be cheated, to save accidental clicks
-        Piece piece = getPiece(space);
+        Piece piece = getCell(index);
         if(piece != null && !piece.isMark()) {
             return;
         }
 
         // if its a mine, show that
-        if(isMine(space)) {
-            setPiece(space, Piece.MINE_GREEN);
+        if(hasMine(index)) {
+            setPiece(index, Piece.MINE_GREEN);
         }
         // otherwise click the space as we know its safe
         else {
-            clickSpace(space);
+            clickSpace(index);
         }
 
         // use a cheat
@@ -511,7 +1276,7 @@ public class MineSweeperBoard implements Serializable {
         int i = 0;
         for(int y = 0; y < height; y++) {
             for(int x = 0; x < width; x++) {
-                spaces[i] = new Space(x, y);
+                spaces[i] = Space.of(x, y);
                 i++;
             }
         }
@@ -533,28 +1298,70 @@ public class MineSweeperBoard implements Serializable {
 
         // array cannot be bigger than 8
         Space[] neighbors = new Space[8];
-        int x = space.getX();
-        int y = space.getY();
-
-        // 2D loop from x - 1, y - 1 up to x + 1, y + 1
-        int neighborCount = 0;
-        for(int i = -1; i <= 1; i++) {
-            for(int j = -1; j <= 1; j++) {
-                // skip offset of 0,0 as that is the input space
-                if(i == 0 && j == 0) {
-                    continue;
+        int[] count = new int[1];
+        forEachNeighbor(getIndex(space), (index) -> {
+            neighbors[count[0]] = Space.of(index % width, index / width);
+            count[0]++;
+        });
+
+        return neighbors;
+    }
+
+    /**
+     * Runs an action on the index of each neighbor of a space. Creates no
+     * objects, so if the action is stored this is safe to call for every space
+     * @param index   Index of the space
+     * @param action  Action to run on each neighbor index
+     */
+    public void forEachNeighbor(int index, IntConsumer action) {
+        int x = index % width;
+        int y = index / width;
+
+        // away from the edges all neighbors exist, so skip the bounds checks
+        if(x > 0 && y > 0 && x < width - 1 && y < height - 1) {
+            for(int offset : neighborOffsets) {
+                action.accept(index + offset);
+            }
+        }
+        else {
+            for(int i = 0; i < 8; i++) {
+                if(isValid(x + NEIGHBOR_X[i], y + NEIGHBOR_Y[i])) {
+                    action.accept(index + neighborOffsets[i]);
                 }
+            }
+        }
+    }
+
+    /**
+     * Counts the neighbors of a space matching a condition. Creates no objects,
+     * so if the condition is stored this is safe to call for every space
+     * @param index      Index of the space
+     * @param condition  Condition to check on each neighbor index
+     * @return  the number of neighbors matching the condition
+     */
+    public int countNeighbors(int index, IntPredicate condition) {
+        int x = index % width;
+        int y = index / width;
 
-                // make sure the space is valid before returning it
-                Space neighbor = new Space(x + i, y + j);
-                if(isValid(neighbor)) {
-                    neighbors[neighborCount] = neighbor;
-                    neighborCount++;
+        int count = 0;
+        // away from the edges all neighbors exist, so skip the bounds checks
+        if(x > 0 && y > 0 && x < width - 1 && y < height - 1) {
+            for(int offset : neighborOffsets) {
+                if(condition.test(index + offset)) {
+                    count++;
+                }
+            }
+        }
+        else {
+            for(int i = 0; i < 8; i++) {
+                if(isValid(x + NEIGHBOR_X[i], y + NEIGHBOR_Y[i])
+                        && condition.test(index + neighborOffsets[i])) {
+                    count++;
                 }
             }
         }
 
-        return neighbors;
+        return count;
     }
 
     /**
@@ -562,8 +1369,8 @@ public class MineSweeperBoard implements Serializable {
      * @param space  space needing an update
      */
     public void markUpdate(Space space) {
-        if(!update.contains(space)) {
-            update.add(space);
+        if(isValid(space)) {
+            update.mark(getIndex(space));
         }
     }
 
@@ -579,17 +1386,99 @@ public class MineSweeperBoard implements Serializable {
             return null;
         }
 
-        int count = 0;
-        // check all the neighbors for a bomb
-        for(Space neighbor : getNeighbors(space)) {
-            // if they have one, add to the running total
-            if(isMine(neighbor)) {
-                count++;
+        return getNumber(getIndex(space));
+    }
+
+    /**
+     * Returns the number to display on the space at the specified index
+     * Does not take bombs on this space into account, check isMine() first
+     * @param index  Index of the space, must be valid
+     * @return  The number of bombs around this space
+     */
+    public Piece getNumber(int index) {
+        // hashed mines are cheap to check, so count them as needed
+        if(numbers == null) {
+            return PIECES[countNeighbors(index, isMineAt)];
+        }
+
+        // numbers share their ordinal with their value
+        return PIECES[(numbers[index >>> 1] >>> ((index & 1) << 2)) & 0xF];
+    }
+
+    /**
+     * Counts the mines around every space into the numbers table.
+     * Each mine adds one to its neighbors, so this is a single pass over the mines
+     */
+    private void countNumbers() {
+        // hashed mines are counted on demand
+        if(oracle != null) {
+            numbers = null;
+            return;
+        }
+        numbers = new byte[nibbles(width * height)];
+
+        // a space has at most 8 mines, so this never carries into the next space
+        IntConsumer addMine = (neighbor) -> numbers[neighbor >>> 1] += 1 << ((neighbor & 1) << 2);
+
+        // loop through the set bits of each long
+        for(int word = 0; word < mineBits.length; word++) {
+            long bits = mineBits[word];
+            while(bits != 0) {
+                int mine = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                forEachNeighbor(mine, addMine);
             }
         }
+    }
+
+
+    /* Space indexes */
+
+    /**
+     * Gets the index of a location, a single int used in place of a Space.
+     * Indexes run along each row, so index = y * width + x
+     * @param x  X value of the location
+     * @param y  Y value of the location
+     * @return  the index of the location, or -1 if not on the board
+     */
+    public int getIndex(int x, int y) {
+        if(!isValid(x, y)) {
+            return -1;
+        }
+        return y * width + x;
+    }
+
+    /**
+     * Gets the index of a space, a single int used in place of a Space
+     * @param space  Space to convert
+     * @return  the index of the space, or -1 if not on the board
+     */
+    public int getIndex(Space space) {
+        if(!isValid(space)) {
+            return -1;
+        }
+        return space.getY() * width + space.getX();
+    }
+
+    /**
+     * Gets the space at an index
+     * @param index  Index of the space
+     * @return  the space at the index, or null if invalid
+     */
+    public Space getSpace(int index) {
+        if(!isValid(index)) {
+            return null;
+        }
+        return Space.of(index % width, index / width);
+    }
 
-        // return the specific piece
-        return Piece.fromNumber(count);
+    /**
+     * Checks if an index is within the bounds of this board
+     * @param index  Index to check
+     * @return  true if the index is within this board
+     */
+    public boolean isValid(int index) {
+        return index >= 0 && index < width * height;
     }
 
 
@@ -607,7 +1496,21 @@ public class MineSweeperBoard implements Serializable {
         }
 
         // otherwise go with the contained piece
-        return pieces[space.getY()][space.getX()];
+        return getCell(getIndex(space));
+    }
+
+    /**
+     * Gets the piece on the space at the specified index
+     * @param index  Index of the space, from getIndex()
+     * @return the piece on the space, or null if empty or invalid
+     */
+    public Piece getPiece(int index) {
+        // invalid gets null
+        if(!isValid(index)) {
+            return null;
+        }
+
+        return getCell(index);
     }
 
     /**
@@ -618,8 +1521,7 @@ public class MineSweeperBoard implements Serializable {
     public void setPiece(Space space, Piece piece) {
         // must be valid
         if(isValid(space)) {
-            pieces[space.getY()][space.getX()] = piece;
-            markUpdate(space);
+            setPiece(getIndex(space), piece);
         }
     }
 
@@ -634,7 +1536,117 @@ public class MineSweeperBoard implements Serializable {
             return false;
         }
 
-        return mines[space.getY()][space.getX()];
+        return hasMine(getIndex(space));
+    }
+
+    /**
+     * Determines if the space at the specified index contains a bomb
+     * @param index  Index of the space, from getIndex()
+     * @return  True if the space contains a bomb
+     */
+    public boolean isMine(int index) {
+        return isValid(index) && hasMine(index);
+    }
+
+    /* Flat storage */
+
+    /**
+     * Gets the number of longs needed to store a bit for each space
+     * @param spaces  Number of spaces
+     * @return  the number of longs in the bitset
+     */
+    private static int words(int spaces) {
+        return (spaces + 63) >>> 6;
+    }
+
+    /**
+     * Gets the number of bytes needed to store four bits for each space
+     * @param spaces  Number of spaces
+     * @return  the number of bytes in the table
+     */
+    private static int nibbles(int spaces) {
+        return (spaces + 1) >>> 1;
+    }
+
+
+    /**
+     * Gets the piece at the specified index
+     * @param index  Index of the space
+     * @return  the piece at the index, or null if empty
+     */
+    Piece getCell(int index) {
+        int id = cells[index];
+        return id == 0 ? null : PIECES[id - 1];
+    }
+
+    /**
+     * Places a piece at the specified index and marks it for an update.
+     * All changes to the board go through here
+     * @param index  Index of the space
+     * @param piece  Piece to place on the space
+     */
+    protected void setPiece(int index, Piece piece) {
+        Piece old = getCell(index);
+        setCell(index, piece);
+        pieceChanged(index, old, piece);
+    }
+
+    /**
+     * Updates the counters and display after a piece was stored
+     * @param index  Index of the space
+     * @param old    Piece previously on the space
+     * @param piece  Piece now on the space
+     */
+    void pieceChanged(int index, Piece old, Piece piece) {
+        // keep track of the numbers on the board for victory
+        boolean wasNumber = isNumber(old);
+        if(wasNumber != isNumber(piece)) {
+            revealed += wasNumber ? -1 : 1;
+        }
+
+        // and the flags for the mine counter
+        boolean wasFlag = countsAsFlag(old);
+        if(wasFlag != countsAsFlag(piece)) {
+            flagCount += wasFlag ? -1 : 1;
+        }
+
+        changeCount++;
+        if(journal != null) {
+            journal.record(index, old == null ? 0 : old.ordinal() + 1, piece == null ? 0 : piece.ordinal() + 1);
+        }
+        update.mark(index);
+        for(MoveListener listener : listeners) {
+            listener.spaceChanged(index, old, piece);
+        }
+    }
+
+    /**
+     * Stores a piece at the specified index without marking an update
+     * @param index  Index of the space
+     * @param piece  Piece to store, or null to empty the space
+     */
+    void setCell(int index, Piece piece) {
+        cells[index] = (byte) (piece == null ? 0 : piece.ordinal() + 1);
+    }
+
+    /**
+     * Determines if the specified index contains a mine
+     * @param index  Index of the space
+     * @return  true if the space contains a mine
+     */
+    boolean hasMine(int index) {
+        if(oracle != null) {
+            return oracle.isMine(index);
+        }
+        return (mineBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Places a mine at the specified index
+     * @param index  Index of the space
+     */
+    private void setMine(int index) {
+        mineBits[index >>> 6] |= 1L << index;
     }
 
     /**
@@ -659,17 +1671,10 @@ public class MineSweeperBoard implements Serializable {
     }
 
     /**
-     * Determines if the contents of a space can be replaced
-     * @param space  Space clicked
+     * Determines if a piece can be replaced by clicking it
+     * @param piece  Piece on the space, null if empty
      */
-    private boolean isReplaceable(Space space) {
-        // invalid spaces are always false
-        if(!isValid(space)) {
-            return false;
-        }
-
-        Piece piece = getPiece(space);
-
+    static boolean isReplaceable(Piece piece) {
         // if the space is empty, it can be clicked
         if(piece == null) {
             return true;
@@ -680,17 +1685,19 @@ public class MineSweeperBoard implements Serializable {
     }
 
     /**
-     * Determines if the space is a number
-     * @param space  Space clicked
+     * Determines if a piece counts as a flag for the mine counter. Wrong flags
+     * shown at the end of the game still count
+     * @param piece  Piece on the space, null if empty
      */
-    private boolean isNumber(Space space) {
-        // invalid spaces are always false
-        if(!isValid(space)) {
-            return false;
-        }
-
-        Piece piece = getPiece(space);
+    private static boolean countsAsFlag(Piece piece) {
+        return piece == Piece.FLAG || piece == Piece.FLAG_NOT;
+    }
 
+    /**
+     * Determines if a piece is a number
+     * @param piece  Piece on the space, null if empty
+     */
+    private static boolean isNumber(Piece piece) {
         // if the space is empty, it is not a number
         if(piece == null) {
             return false;
@@ -719,12 +1726,225 @@ public class MineSweeperBoard implements Serializable {
         return height;
     }
 
+    /**
+     * Gets the number of flags placed on the board
+     * @return  the number of flags
+     */
+    int getFlagCount() {
+        return flagCount;
+    }
+
+    /**
+     * Gets the number of spaces showing a number
+     * @return  the number of spaces revealed
+     */
+    int getRevealed() {
+        return revealed;
+    }
+
+    /**
+     * Gets the stored spaces, as piece ordinal plus one. Not a copy
+     * @return  the spaces by index
+     */
+    byte[] cellData() {
+        return cells;
+    }
+
+    /**
+     * Gets the stored mine bitset. Not a copy
+     * @return  the mines by index, or null if the mines are hashed or stored
+     *          by a subclass
+     */
+    long[] mineData() {
+        return mineBits;
+    }
+
+    /**
+     * Gets the hashed mines
+     * @return  the mine oracle, or null if the mines are stored
+     */
+    MineOracle getOracle() {
+        return oracle;
+    }
+
+    /**
+     * Gets the number of mines requested for the board
+     * @return  the number of mines
+     */
+    public int getMineCount() {
+        return mineCount;
+    }
+
+    /**
+     * Gets the number of cheats allowed each game
+     * @return  the cheats allowed
+     */
+    public int getCheatsAllowed() {
+        return cheatsAllowed;
+    }
+
+    /**
+     * Gets the seed used to generate the current mines
+     * @return  the board seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Starts recording moves for a replay. Must be called before any clicks
+     * in the game, and the recording restarts with each new game. Only one
+     * thread may click while recording
+     * @return  the recorder, which can create the replay at any point
+     */
+    public ReplayRecorder startRecording() {
+        // marks can be placed before the mines exist, so check every space
+        boolean clicked = firstClick;
+        int spaces = width * height;
+        for(int i = 0; i < spaces && !clicked; i++) {
+            clicked = getCell(i) != null;
+        }
+        if(clicked) {
+            throw new IllegalStateException("Recording must start before the first click");
+        }
+        stopRecording();
+        recorder = new ReplayRecorder(this);
+        addMoveListener(recorder);
+        return recorder;
+    }
+
+    /**
+     * Stops recording moves for a replay
+     */
+    public void stopRecording() {
+        if(recorder != null) {
+            removeMoveListener(recorder);
+            recorder = null;
+        }
+    }
+
+    /**
+     * Adds a listener told about each move made on the board. Listeners are
+     * not saved or copied with the board
+     * @param listener  Listener to add
+     */
+    void addMoveListener(MoveListener listener) {
+        MoveListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    /**
+     * Removes a listener added by addMoveListener()
+     * @param listener  Listener to remove
+     */
+    void removeMoveListener(MoveListener listener) {
+        for(int i = 0; i < listeners.length; i++) {
+            if(listeners[i] == listener) {
+                MoveListener[] removed = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+                listeners = removed;
+                return;
+            }
+        }
+    }
+
     /**
      * Gets the number of mines left on the board
      * @return  number of mines remaining
      */
     public int getRemainingMines() {
-        return mineCount - flagCount;
+        return getTotalMines() - flagCount;
+    }
+
+    /**
+     * Gets the number of mines actually on the board. Approximate hashed
+     * placement may place a few more or less than requested
+     * @return  the number of mines on the board
+     */
+    protected int getTotalMines() {
+        // before the first click, the oracle has no mines yet
+        if(oracle != null && firstClick) {
+            return oracle.getMineCount();
+        }
+        return mineCount;
+    }
+
+    /**
+     * Gets the number of spaces without mines that are not yet revealed.
+     * The game is won once this reaches 0
+     * @return  the number of safe spaces left to reveal
+     */
+    protected int getHiddenSafeSpaces() {
+        return width * height - getTotalMines() - revealed;
+    }
+
+    /**
+     * Checks if the mines have been generated by the first click
+     * @return  true if the mines are generated
+     */
+    protected boolean isGenerated() {
+        return firstClick;
+    }
+
+    /**
+     * Gets the method used to place mines from the seed
+     * @return  the mine placement method
+     */
+    public Placement getPlacement() {
+        return placement;
+    }
+
+    /**
+     * Sets the method used to place mines from the seed. Takes effect the next
+     * time mines are generated
+     * @param placement  Mine placement method
+     */
+    public void setPlacement(Placement placement) {
+        this.placement = placement;
+
+        // hashed and stored mines need different storage
+        if(!firstClick) {
+            clearMines();
+        }
+    }
+
+    /**
+     * Checks if large areas of 0s are opened using all cores
+     * @return  true if parallel reveal is enabled
+     */
+    public boolean isParallelReveal() {
+        return parallelReveal;
+    }
+
+    /**
+     * Sets if large areas of 0s are opened using all cores. Either way the
+     * board ends up the same, and small areas are always opened on the
+     * calling thread
+     * @param parallelReveal  true to enable parallel reveal
+     */
+    public void setParallelReveal(boolean parallelReveal) {
+        this.parallelReveal = parallelReveal;
+    }
+
+    /**
+     * Checks if the first click picks mines that need no guessing
+     * @return  true if no guessing mode is enabled
+     */
+    public boolean isNoGuess() {
+        return noGuess;
+    }
+
+    /**
+     * Sets if the first click picks mines that can be cleared without
+     * guessing. Only the seed is chosen differently, so restarting and saves
+     * work as usual. Boards that are too crowded to clear without guessing
+     * fall back to a random seed after {@link NoGuessGenerator#MAX_CANDIDATES}
+     * tries
+     * @param noGuess  true to enable no guessing mode
+     */
+    public void setNoGuess(boolean noGuess) {
+        this.noGuess = noGuess;
     }
 
     /**
@@ -784,12 +2004,22 @@ public class MineSweeperBoard implements Serializable {
         return true;
     }
 
+    /**
+     * Checks if a location is within the bounds of this board
+     * @param x  X value of the location
+     * @param y  Y value of the location
+     * @return  true if the location is within this board
+     */
+    private boolean isValid(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
 
     /**
-     * Gets a list of spaces pending updates to update the button displays
-     * @return a list of spaces needing an update
+     * Gets the set of spaces pending updates to update the button displays
+     * @return a set of spaces needing an update
      */
-    public Queue<Space> getUpdates() {
+    public UpdateSet getUpdates() {
         return update;
     }
 
@@ -807,4 +2037,43 @@ public class MineSweeperBoard implements Serializable {
         /** Safely clicking a mine */
         CHEAT;
     }
+
+    /**
+     * Methods of placing mines from a seed.
+     * Each gives a different board for the same seed, so the method is saved
+     * with the game.
+     */
+    public enum Placement {
+        /** Samples just the mine locations, time depends only on the mine count */
+        SAMPLED,
+        /** Same boards as older versions for the same seed */
+        LEGACY,
+        /**
+         * Mines are a hash of the seed and space, so nothing is placed or
+         * stored. The mine count is close to the one requested, but may differ
+         */
+        HASHED,
+        /**
+         * Same as HASHED, but searches the hashes once for a cutoff giving
+         * exactly the requested mine count
+         */
+        HASHED_EXACT,
+        /**
+         * Same as SAMPLED, but the mines are placed as if the middle was
+         * clicked, then moved so the middle lands on the space clicked,
+         * wrapping around the edges. Spaces kept free that wrap away from the
+         * click may still get a mine, so every space has the same chance as
+         * SAMPLED. The mines can be placed before the first click, such as
+         * for boards waiting in a {@link BoardPool}
+         */
+        SHIFTED;
+
+        /**
+         * Checks if this placement uses a hash in place of stored mines
+         * @return  true if mines are not stored
+         */
+        public boolean isHashed() {
+            return this == HASHED || this == HASHED_EXACT;
+        }
+    }
 }
\ No newline at end of file
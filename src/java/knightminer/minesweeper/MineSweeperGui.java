@@ -5,19 +5,23 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
-import java.util.Queue;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JScrollBar;
 import javax.swing.SwingConstants;
 
 /**
@@ -25,17 +29,30 @@ import javax.swing.SwingConstants;
  *
  * @author  KnightMiner
  */
-public class MineSweeperGui extends JFrame implements ActionListener {
+public class MineSweeperGui extends JFrame implements ActionListener, AdjustmentListener {
+    // most buttons shown across or down, larger boards scroll so only the
+    // spaces shown are read from the board
+    private static final int VIEW_SIZE = 64;
+
     // data
     private MineSweeperBoard board;
 
     // states
     private boolean isCheating;
 
+    // finds the chance of a mine on each hidden space, null if not shown
+    private Heatmap heatmap;
+    private ProbabilitySolver.Result chances;
+
     // buttons and labels
     private JLabel mines;
     private MineButton[][] buttons;
 
+    // space in the top left button, and the scroll bars to move it. Scroll
+    // bars are null if the board fits
+    private int viewX, viewY;
+    private JScrollBar scrollX, scrollY;
+
     private JButton buttonNewGame;
     private JButton buttonCheat;
 
@@ -44,9 +61,14 @@ public class MineSweeperGui extends JFrame implements ActionListener {
     private JMenu menuMineSweeper;
 
     private JMenu menuNewGame;
+    private JCheckBoxMenuItem buttonNoGuess;
     private JMenuItem buttonRestart;
+    private JMenuItem buttonUndo;
+    private JMenuItem buttonRedo;
+    private JCheckBoxMenuItem buttonChances;
     private JMenuItem buttonSave;
     private JMenuItem buttonLoad;
+    private JMenuItem buttonBrowse;
     private JMenuItem buttonExit;
 
     private JMenu menuHelp;
@@ -80,12 +102,33 @@ public class MineSweeperGui extends JFrame implements ActionListener {
             menuNewGame.add(button);
         }
 
+        // picks mines that can be cleared without guessing
+        menuNewGame.addSeparator();
+        buttonNoGuess = new JCheckBoxMenuItem("No guessing", MineSweeper.isNoGuess());
+        buttonNoGuess.addActionListener(this);
+        menuNewGame.add(buttonNoGuess);
+
 
         // restarts the current game
         buttonRestart = new JMenuItem("Restart");
         buttonRestart.addActionListener(this);
         menuMineSweeper.add(buttonRestart);
 
+        // undoes the last move
+        buttonUndo = new JMenuItem("Undo");
+        buttonUndo.addActionListener(this);
+        menuMineSweeper.add(buttonUndo);
+
+        // redoes the last undone move
+        buttonRedo = new JMenuItem("Redo");
+        buttonRedo.addActionListener(this);
+        menuMineSweeper.add(buttonRedo);
+
+        // shades hidden spaces by their chance of a mine
+        buttonChances = new JCheckBoxMenuItem("Show mine chances", MineSweeper.isShowChances());
+        buttonChances.addActionListener(this);
+        menuMineSweeper.add(buttonChances);
+
         // saves the current game
         buttonSave = new JMenuItem("Save game");
         buttonSave.addActionListener(this);
@@ -96,6 +139,11 @@ public class MineSweeperGui extends JFrame implements ActionListener {
         buttonLoad.addActionListener(this);
         menuMineSweeper.add(buttonLoad);
 
+        // lists the saved games to load one
+        buttonBrowse = new JMenuItem("Saved games");
+        buttonBrowse.addActionListener(this);
+        menuMineSweeper.add(buttonBrowse);
+
         // exits the game
         menuMineSweeper.addSeparator();
         buttonExit = new JMenuItem("Exit");
@@ -144,25 +192,23 @@ public class MineSweeperGui extends JFrame implements ActionListener {
         top.add(buttonNewGame);
 
 
-        // cheating, skip if 0 cheats to start
-        if(board.canCheat()) {
-            buttonCheat = new JButton();
-            updateCheat();
-            buttonCheat.addActionListener(this);
-            top.add(buttonCheat);
-        } else {
-            top.add(new JLabel(""));
-        }
+        // cheating, hidden if 0 cheats to start
+        // kept in place so a new game in this window can show it again
+        buttonCheat = new JButton();
+        updateCheat();
+        buttonCheat.addActionListener(this);
+        buttonCheat.setVisible(board.canCheat());
+        top.add(buttonCheat);
 
         top.setPreferredSize(new Dimension(20, top.getFontMetrics(buttonNewGame.getFont()).getHeight() * 2));
 
         pane.add(top, BorderLayout.NORTH);
 
 
-        // main button grid
+        // main button grid, covering the part of the board in view
         Container minesContainer = new Container();
-        int width2 = board.getWidth();
-        int height2 = board.getHeight();
+        int width2 = Math.min(board.getWidth(), VIEW_SIZE);
+        int height2 = Math.min(board.getHeight(), VIEW_SIZE);
         minesContainer.setLayout(new GridLayout(height2, width2));
         buttons = new MineButton[height2][width2];
 
@@ -170,17 +216,37 @@ public class MineSweeperGui extends JFrame implements ActionListener {
         for(int y = 0; y < height2; y++) {
             for(int x = 0; x < width2; x++) {
                 // add buttons, and store them
-                buttons[y][x] = new MineButton(this, board, new Space(x, y));
+                buttons[y][x] = new MineButton(this, board, Space.of(x, y));
                 minesContainer.add(buttons[y][x]);
             }
         }
 
-        pane.add(minesContainer, BorderLayout.CENTER);
+        // scroll bars for boards larger than the view
+        Container view = new Container();
+        view.setLayout(new BorderLayout());
+        view.add(minesContainer, BorderLayout.CENTER);
+        if(board.getWidth() > width2) {
+            scrollX = new JScrollBar(JScrollBar.HORIZONTAL, 0, width2, 0, board.getWidth());
+            scrollX.addAdjustmentListener(this);
+            view.add(scrollX, BorderLayout.SOUTH);
+        }
+        if(board.getHeight() > height2) {
+            scrollY = new JScrollBar(JScrollBar.VERTICAL, 0, height2, 0, board.getHeight());
+            scrollY.addAdjustmentListener(this);
+            view.add(scrollY, BorderLayout.EAST);
+            minesContainer.addMouseWheelListener(event ->
+                    scrollY.setValue(scrollY.getValue() + event.getWheelRotation() * scrollY.getUnitIncrement()));
+        }
+
+        pane.add(view, BorderLayout.CENTER);
+
+        // keep showing chances if shown in the last game
+        showChances(MineSweeper.isShowChances());
 
 
         // sizes, we need them for the top bar
-        int width = board.getWidth() * 40;
-        int height = board.getHeight() * 40 + 100;
+        int width = width2 * 40;
+        int height = height2 * 40 + 100;
 
         setSize(width, height);
         setVisible(true);
@@ -196,28 +262,140 @@ public class MineSweeperGui extends JFrame implements ActionListener {
      * @return  the button at the location
      */
     public MineButton getButton(Space space) {
-        if(!board.isValid(space)) {
+        if(!board.isValid(space) || !inView(space.getX(), space.getY())) {
             return null;
         }
-        return buttons[space.getY()][space.getX()];
+        return buttons[space.getY() - viewY][space.getX() - viewX];
+    }
+
+    /**
+     * Checks if a space has a button in the current view
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  true if the space is shown
+     */
+    private boolean inView(int x, int y) {
+        return x >= viewX && y >= viewY && x - viewX < buttons[0].length && y - viewY < buttons.length;
+    }
+
+    /**
+     * Moves the view when a scroll bar changes
+     */
+    @Override
+    public void adjustmentValueChanged(AdjustmentEvent event) {
+        int x = scrollX == null ? 0 : scrollX.getValue();
+        int y = scrollY == null ? 0 : scrollY.getValue();
+        if(x == viewX && y == viewY) {
+            return;
+        }
+
+        viewX = x;
+        viewY = y;
+        for(int j = 0; j < buttons.length; j++) {
+            for(int i = 0; i < buttons[j].length; i++) {
+                buttons[j][i].setSpace(Space.of(x + i, y + j));
+            }
+        }
     }
 
     /**
      * Updates all spaces pending update to display their current value
      */
     public void updateSpaces() {
-        Queue<Space> queue = board.getUpdates();
-        while(!queue.isEmpty()) {
-            Space space = queue.poll();
-            MineButton update = getButton(space);
-            if(update != null) {
-                update.updatePiece();
+        // only the spaces that changed are in the set
+        UpdateSet updates = board.getUpdates();
+        int width = board.getWidth();
+
+        // the heatmap solves again from the same changes, or copies the
+        // whole board if everything changed
+        boolean changed = !updates.isEmpty();
+        boolean all = updates.size() == width * board.getHeight();
+        if(heatmap != null && all) {
+            heatmap.changedAll();
+        }
+        for(int index = updates.poll(); index >= 0; index = updates.poll()) {
+            int x = index % width;
+            int y = index / width;
+            if(inView(x, y)) {
+                buttons[y - viewY][x - viewX].updatePiece();
+            }
+            if(heatmap != null && !all) {
+                heatmap.changed(index);
             }
         }
+        if(heatmap != null && changed) {
+            heatmap.refresh();
+        }
 
         updateMines();
     }
 
+    /**
+     * Plays another board of the same size in this window, so it keeps its
+     * place on the screen and the menu settings
+     * @param board  Board to play
+     */
+    private void setBoard(MineSweeperBoard board) {
+        // the heatmap follows a single board
+        boolean shown = heatmap != null;
+        showChances(false);
+        closeBoard();
+
+        this.board = board;
+        for(MineButton[] row : buttons) {
+            for(MineButton button : row) {
+                button.setBoard(board);
+            }
+        }
+        buttonCheat.setVisible(board.canCheat());
+        showChances(shown);
+    }
+
+    /**
+     * Starts or stops shading hidden spaces by their chance of a mine
+     * @param show  true to show the chances
+     */
+    private void showChances(boolean show) {
+        if(show && heatmap == null) {
+            heatmap = new Heatmap(board, this::updateChances);
+            heatmap.refresh();
+        }
+        else if(!show && heatmap != null) {
+            heatmap.close();
+            heatmap = null;
+            updateChances(null);
+        }
+    }
+
+    /**
+     * Shades the buttons with newly found chances
+     * @param chances  Chances of each space, or null to stop shading
+     */
+    private void updateChances(ProbabilitySolver.Result chances) {
+        this.chances = chances;
+        for(MineButton[] row : buttons) {
+            for(MineButton button : row) {
+                button.repaint();
+            }
+        }
+    }
+
+    /**
+     * Gets the chance of a mine to shade a space with
+     * @param space  Space to check
+     * @return  the chance from 0 to 1, or -1 if the space is not shaded
+     */
+    public double getMineChance(Space space) {
+        if(chances == null || board.gameOver()) {
+            return -1;
+        }
+        Piece piece = board.getPiece(space);
+        if(piece != null && !piece.isMark()) {
+            return -1;
+        }
+        return chances.getProbability(board.getIndex(space));
+    }
+
     /**
      * Updates the mines display
      */
@@ -268,6 +446,17 @@ public class MineSweeperGui extends JFrame implements ActionListener {
         updateSpaces();
     }
 
+    /**
+     * Updates the display after a move is undone or redone, which may start
+     * or end the game
+     */
+    private void updateMove() {
+        resetButtons();
+        if(board.gameOver()) {
+            gameOver(board.hasWon());
+        }
+    }
+
     /**
      * Sets the winning text
      * @param victory  Whether the player won
@@ -289,6 +478,33 @@ public class MineSweeperGui extends JFrame implements ActionListener {
         return isCheating;
     }
 
+    /**
+     * Closes the window, and the save file if the board is played from one
+     */
+    @Override
+    public void dispose() {
+        super.dispose();
+
+        if(heatmap != null) {
+            heatmap.close();
+        }
+        closeBoard();
+    }
+
+    /**
+     * Closes the save file if the board is played from one
+     */
+    private void closeBoard() {
+        if(board instanceof MappedMineSweeperBoard) {
+            try {
+                ((MappedMineSweeperBoard) board).close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Called when the 'X' button is pressed on the window
      * @param e  Event the button is called with
@@ -308,8 +524,15 @@ public class MineSweeperGui extends JFrame implements ActionListener {
 
         // restart the current game
         if(button == buttonNewGame) {
-            // make the board new
-            board.newGame();
+            // preset sizes come ready from the pool, played in this window
+            MineSweeper.Difficulty difficulty = MineSweeper.Difficulty.of(board);
+            if(difficulty.isPreset()) {
+                setBoard(MineSweeper.takeBoard(difficulty));
+            }
+            // otherwise make the board new
+            else {
+                board.newGame();
+            }
 
             // and clear game data
             resetButtons();
@@ -326,6 +549,22 @@ public class MineSweeperGui extends JFrame implements ActionListener {
             return;
         }
 
+        // undo the last move
+        if(button == buttonUndo) {
+            if(board.undo()) {
+                updateMove();
+            }
+            return;
+        }
+
+        // redo the last undone move
+        if(button == buttonRedo) {
+            if(board.redo()) {
+                updateMove();
+            }
+            return;
+        }
+
         // saves the game
         if(button == buttonSave) {
             String filename = JOptionPane.showInputDialog(this,
@@ -353,7 +592,8 @@ public class MineSweeperGui extends JFrame implements ActionListener {
                 }
             }
 
-            board.saveGame(filename);
+            // written in the background from a copy, so play can continue
+            SaveWorker.save(this, board, filename);
         }
 
         // loads the game
@@ -371,18 +611,8 @@ public class MineSweeperGui extends JFrame implements ActionListener {
 
             // if it exists, prompt to continue
             if(new File(filename + ".bin").exists()) {
-                MineSweeperBoard board = MineSweeperBoard.loadGame(filename);
-                if(board != null) {
-                    MineSweeper.startGame(board);
-                }
-                // did not load right
-                else {
-                    JOptionPane.showMessageDialog(this,
-                            "Error reading save game " + filename,
-                            "MineSweeper - Load game",
-                            JOptionPane.ERROR_MESSAGE
-                            );
-                }
+                // starts the game once loaded
+                SaveWorker.load(this, filename);
             }
             else {
                 // file does not exist
@@ -394,6 +624,26 @@ public class MineSweeperGui extends JFrame implements ActionListener {
             }
         }
 
+        // toggles no guessing for new games and this one if not started
+        if(button == buttonNoGuess) {
+            MineSweeper.setNoGuess(buttonNoGuess.isSelected());
+            board.setNoGuess(buttonNoGuess.isSelected());
+            return;
+        }
+
+        // shades hidden spaces by their chance of a mine
+        if(button == buttonChances) {
+            MineSweeper.setShowChances(buttonChances.isSelected());
+            showChances(buttonChances.isSelected());
+            return;
+        }
+
+        // lists the saved games
+        if(button == buttonBrowse) {
+            SaveBrowser.showSaves(this);
+            return;
+        }
+
         // cheat button
         if(button == buttonCheat) {
             // no cheating too many times
@@ -0,0 +1,269 @@
+package knightminer.minesweeper;
+
+/**
+ * Records the changes made by each click so they can be undone and redone.
+ * Each changed space is stored as a single long holding the index with the
+ * old and new pieces, in a ring buffer that grows up to a fixed capacity.
+ * Once full, the oldest moves are dropped to make room, so long games do not
+ * grow the journal without limit.
+ *
+ * @author  KnightMiner
+ */
+class MoveJournal {
+
+    private final MineSweeperBoard board;
+
+    // most changes stored, a power of two
+    private final int capacity;
+
+    // changes as index << 16 | old << 8 | new, by sequence number
+    private long[] changes;
+    // for each move, the sequence number after its last change
+    private long[] moveEnds;
+    // for each move, the board state before << 32 | the state after
+    private long[] moveStates;
+
+    // sequence numbers of the oldest stored change, the end of the changes
+    // applied to the board, and the end of the changes that can be redone
+    private long changeStart, changeEnd, changeLimit;
+    // same as above, for moves
+    private long moveStart, moveEnd, moveLimit;
+
+    // state of the move being recorded
+    private boolean recording;
+    private boolean overflow;
+    private int stateBefore;
+
+    // true while undoing or redoing, so those changes are not recorded
+    private boolean applying;
+
+    /**
+     * Creates a new empty journal
+     * @param board     Board to undo and redo changes on
+     * @param capacity  Most changes to store, rounded up to a power of two
+     */
+    public MoveJournal(MineSweeperBoard board, int capacity) {
+        this.board = board;
+        this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        int initial = Math.min(this.capacity, 64);
+        this.changes = new long[initial];
+        this.moveEnds = new long[initial];
+        this.moveStates = new long[initial];
+    }
+
+
+    /* Recording */
+
+    /**
+     * Starts recording a move
+     * @param state  State of the board before the move
+     */
+    public void beginMove(int state) {
+        recording = true;
+        overflow = false;
+        stateBefore = state;
+    }
+
+    /**
+     * Records a change to a space. Changes made outside of a move cannot be
+     * undone safely, so they clear the journal
+     * @param index  Index of the space
+     * @param old    ID of the piece before the change, 0 for empty
+     * @param piece  ID of the piece after the change, 0 for empty
+     */
+    public void record(int index, int old, int piece) {
+        if(applying) {
+            return;
+        }
+        if(!recording) {
+            clear();
+            return;
+        }
+        if(overflow) {
+            return;
+        }
+
+        // a new change means the undone moves can no longer be redone
+        dropRedo();
+
+        // make room, dropping the oldest moves once at capacity
+        if(changeEnd - changeStart == changes.length) {
+            if(changes.length < capacity) {
+                changes = grow(changes, changeStart);
+            }
+            else {
+                while(changeEnd - changeStart == changes.length && moveStart < moveEnd) {
+                    dropOldest();
+                }
+
+                // the move alone is larger than the journal
+                if(changeEnd - changeStart == changes.length) {
+                    overflow = true;
+                    return;
+                }
+            }
+        }
+
+        changes[(int) changeEnd & (changes.length - 1)] = (long) index << 16 | old << 8 | piece;
+        changeEnd++;
+    }
+
+    /**
+     * Finishes recording a move
+     * @param state  State of the board after the move
+     */
+    public void endMove(int state) {
+        recording = false;
+
+        // too large to undo, so nothing before it can be undone either
+        if(overflow) {
+            clear();
+            return;
+        }
+
+        // nothing happened? nothing to undo
+        long start = moveStart == moveEnd ? changeStart : moveEnds[(int) (moveEnd - 1) & (moveEnds.length - 1)];
+        if(changeEnd == start && state == stateBefore) {
+            return;
+        }
+        dropRedo();
+
+        // make room for the move
+        if(moveEnd - moveStart == moveEnds.length) {
+            if(moveEnds.length < capacity) {
+                moveEnds = grow(moveEnds, moveStart);
+                moveStates = grow(moveStates, moveStart);
+            }
+            else {
+                dropOldest();
+            }
+        }
+
+        int slot = (int) moveEnd & (moveEnds.length - 1);
+        moveEnds[slot] = changeEnd;
+        moveStates[slot] = (long) stateBefore << 32 | (state & 0xFFFFFFFFL);
+        moveEnd++;
+        moveLimit = moveEnd;
+        changeLimit = changeEnd;
+    }
+
+    /**
+     * Removes all moves from the journal
+     */
+    public void clear() {
+        changeStart = changeEnd = changeLimit = 0;
+        moveStart = moveEnd = moveLimit = 0;
+    }
+
+
+    /* Undo and redo */
+
+    /**
+     * Checks if there is a move to undo
+     * @return  true if a move can be undone
+     */
+    public boolean canUndo() {
+        return moveEnd > moveStart;
+    }
+
+    /**
+     * Checks if there is a move to redo
+     * @return  true if a move can be redone
+     */
+    public boolean canRedo() {
+        return moveLimit > moveEnd;
+    }
+
+    /**
+     * Undoes the last move, restoring each space it changed
+     * @return  the state of the board before the move, or -1 if there was no
+     *          move to undo
+     */
+    public int undo() {
+        if(!canUndo()) {
+            return -1;
+        }
+
+        long move = moveEnd - 1;
+        long start = move == moveStart ? changeStart : moveEnds[(int) (move - 1) & (moveEnds.length - 1)];
+
+        // changes are undone newest first, in case a space changed twice
+        applying = true;
+        try {
+            for(long i = changeEnd - 1; i >= start; i--) {
+                long change = changes[(int) i & (changes.length - 1)];
+                board.restorePiece((int) (change >>> 16), (int) (change >>> 8) & 0xFF);
+            }
+        }
+        finally {
+            applying = false;
+        }
+
+        changeEnd = start;
+        moveEnd = move;
+        return (int) (moveStates[(int) move & (moveStates.length - 1)] >>> 32);
+    }
+
+    /**
+     * Redoes the last undone move
+     * @return  the state of the board after the move, or -1 if there was no
+     *          move to redo
+     */
+    public int redo() {
+        if(!canRedo()) {
+            return -1;
+        }
+
+        int slot = (int) moveEnd & (moveEnds.length - 1);
+        long end = moveEnds[slot];
+
+        applying = true;
+        try {
+            for(long i = changeEnd; i < end; i++) {
+                long change = changes[(int) i & (changes.length - 1)];
+                board.restorePiece((int) (change >>> 16), (int) change & 0xFF);
+            }
+        }
+        finally {
+            applying = false;
+        }
+
+        changeEnd = end;
+        moveEnd++;
+        return (int) moveStates[slot];
+    }
+
+
+    /* Internal */
+
+    /**
+     * Forgets any undone moves
+     */
+    private void dropRedo() {
+        changeLimit = changeEnd;
+        moveLimit = moveEnd;
+    }
+
+    /**
+     * Drops the oldest move to make room for newer ones
+     */
+    private void dropOldest() {
+        changeStart = moveEnds[(int) moveStart & (moveEnds.length - 1)];
+        moveStart++;
+    }
+
+    /**
+     * Doubles the size of a ring buffer
+     * @param buffer  Buffer to grow, which must be full
+     * @param start   Sequence number of the oldest value
+     * @return  the larger buffer, with values at the same sequence numbers
+     */
+    private static long[] grow(long[] buffer, long start) {
+        int length = buffer.length;
+        long[] grown = new long[length << 1];
+        for(long i = start; i < start + length; i++) {
+            grown[(int) i & (grown.length - 1)] = buffer[(int) i & (length - 1)];
+        }
+        return grown;
+    }
+}
@@ -0,0 +1,58 @@
+package knightminer.minesweeper;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+
+/**
+ * Receives the moves made on a board, in the order they are made. Each method
+ * is called on the thread making the move, once the board reflects it.
+ * Listeners that follow the board space by space can also be told about each
+ * space a move changes.
+ *
+ * @author  KnightMiner
+ */
+interface MoveListener {
+
+    /**
+     * Called after a click that changed the board
+     * @param index   Index of the space clicked
+     * @param action  Type of click
+     */
+    void clicked(int index, ClickAction action);
+
+    /**
+     * Called when the mines are generated, before the click that generated
+     * them finishes
+     * @param clicked  Index of the space kept clear, or -1 for none
+     */
+    void started(int clicked);
+
+    /**
+     * Called after the game restarts with the same mines
+     */
+    void restarted();
+
+    /**
+     * Called after a new game clears the board
+     */
+    void cleared();
+
+    /**
+     * Called after the last move was undone
+     */
+    void undone();
+
+    /**
+     * Called after the last undone move was redone
+     */
+    void redone();
+
+    /**
+     * Called for each space changed while a move, undo, or redo is made, so
+     * before clicked, undone, or redone. Spaces emptied by a restart or new
+     * game are not reported one by one
+     * @param index  Index of the space
+     * @param old    Piece previously on the space
+     * @param piece  Piece now on the space
+     */
+    default void spaceChanged(int index, Piece old, Piece piece) {}
+}
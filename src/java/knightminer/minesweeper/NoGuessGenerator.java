@@ -0,0 +1,176 @@
+package knightminer.minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+
+/**
+ * Finds a seed whose mines can be cleared from the first click without
+ * guessing.
+ * <p>
+ * Candidate seeds are derived from a starting seed, and each candidate is
+ * played out on a scratch board using only the deductions of {@link Solver}.
+ * The first candidate that gets cleared is used. Candidates are tried by one
+ * worker per thread of a {@link ForkJoinPool} through invokeAny, and once any
+ * worker finds a seed the others stop at their next candidate. The common pool
+ * is used unless another is given, such as the low priority pool of
+ * {@link BoardPool}.
+ * <p>
+ * Only the seed is kept, so the board itself is generated as usual and
+ * restarting, replays, and saves need nothing new.
+ *
+ * @author  KnightMiner
+ */
+class NoGuessGenerator {
+
+    /** Most candidates tried before settling for a board that needs guessing */
+    public static final int MAX_CANDIDATES = 10000;
+
+    // added to the starting seed for each candidate, spreads out nearby seeds
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    private final MineSweeperBoard board;
+    private final int clicked;
+    private final long start;
+
+    // next candidate to try, and set once a seed is found
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicBoolean found = new AtomicBoolean();
+
+    private NoGuessGenerator(MineSweeperBoard board, int clicked, long start) {
+        this.board = board;
+        this.clicked = clicked;
+        this.start = start;
+    }
+
+    /**
+     * Finds a seed for a board that needs no guessing from the first click
+     * @param board    Board to generate mines for, only its settings are used
+     * @param clicked  Index of the first click
+     * @param start    Seed to derive candidates from
+     * @return  a seed needing no guessing, or the starting seed if none was
+     *          found within MAX_CANDIDATES
+     */
+    public static long findSeed(MineSweeperBoard board, int clicked, long start) {
+        return findSeed(board, clicked, start, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds a seed for a board that needs no guessing from the first click,
+     * with one worker per thread of a pool
+     * @param board    Board to generate mines for, only its settings are used
+     * @param clicked  Index of the first click
+     * @param start    Seed to derive candidates from
+     * @param pool     Pool to run the workers in
+     * @return  a seed needing no guessing, or the starting seed if none was
+     *          found within MAX_CANDIDATES
+     */
+    public static long findSeed(MineSweeperBoard board, int clicked, long start, ForkJoinPool pool) {
+        NoGuessGenerator generator = new NoGuessGenerator(board, clicked, start);
+        List<Callable<Long>> workers = new ArrayList<>();
+        for(int i = 0; i < pool.getParallelism(); i++) {
+            workers.add(generator::search);
+        }
+
+        try {
+            return pool.invokeAny(workers);
+        }
+        catch(ExecutionException e) {
+            // every worker ran out of candidates
+            return start;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return start;
+        }
+        finally {
+            generator.found.set(true);
+        }
+    }
+
+    /**
+     * Checks if a seed can be cleared from a click without guessing
+     * @param board    Board to check, only its settings are used
+     * @param clicked  Index of the first click
+     * @param seed     Seed to check
+     * @return  true if the board can be cleared without guessing
+     */
+    public static boolean isSolvable(MineSweeperBoard board, int clicked, long seed) {
+        MineSweeperBoard scratch = createScratch(board);
+        try(Solver solver = new Solver(scratch)) {
+            return isSolvable(scratch, solver, seed, clicked, new AtomicBoolean());
+        }
+    }
+
+    /**
+     * Tries candidates until one works, another worker finds one, or they
+     * run out
+     * @return  the seed found
+     * @throws IllegalStateException  if no seed was found by this worker
+     */
+    private Long search() {
+        // each worker plays on its own board
+        MineSweeperBoard scratch = createScratch(board);
+        try(Solver solver = new Solver(scratch)) {
+            int candidate;
+            while(!found.get() && (candidate = next.getAndIncrement()) < MAX_CANDIDATES) {
+                long seed = start + candidate * SEED_STEP;
+                if(isSolvable(scratch, solver, seed, clicked, found)) {
+                    found.set(true);
+                    return seed;
+                }
+            }
+        }
+        throw new IllegalStateException("No seed found");
+    }
+
+    /**
+     * Creates a board to play candidates on, with nothing to slow down moves
+     * @param board  Board to copy the settings of
+     * @return  a board of the same size and placement
+     */
+    private static MineSweeperBoard createScratch(MineSweeperBoard board) {
+        MineSweeperBoard scratch = new MineSweeperBoard(board.getWidth(), board.getHeight(),
+                board.getMineCount(), 0);
+        scratch.setPlacement(board.getPlacement());
+        scratch.setJournalCapacity(0);
+        scratch.setParallelReveal(false);
+        return scratch;
+    }
+
+    /**
+     * Plays a candidate using only certain moves
+     * @param scratch  Board to play on
+     * @param solver   Solver following the board
+     * @param seed     Seed to try
+     * @param clicked  Index of the first click
+     * @param stop     Set to give up early
+     * @return  true if the board was cleared
+     */
+    private static boolean isSolvable(MineSweeperBoard scratch, Solver solver, long seed, int clicked,
+            AtomicBoolean stop) {
+        scratch.newGame();
+        scratch.startGame(seed, clicked);
+        scratch.handleClick(clicked, ClickAction.DEFAULT);
+
+        while(!scratch.gameOver() && !stop.get()) {
+            solver.solve();
+            int safe = solver.pollSafe();
+            if(safe < 0) {
+                return false;
+            }
+            do {
+                scratch.handleClick(safe, ClickAction.DEFAULT);
+                safe = solver.pollSafe();
+            }
+            while(safe >= 0);
+        }
+        return scratch.hasWon();
+    }
+}
@@ -0,0 +1,198 @@
+package knightminer.minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Finishes opening a large area of 0s using all cores. The board is split
+ * into square tiles, and the area is opened in rounds: each round opens every
+ * tile with pending spaces in parallel, with each tile only changing its own
+ * spaces. Spaces reached in a neighboring tile are passed along to the next
+ * round. The opened area does not depend on the order spaces are reached, so
+ * the board ends up the same as opening one space at a time.
+ *
+ * @author  KnightMiner
+ */
+class ParallelReveal {
+
+    // cached piece values, as Piece.values() creates a new array each call
+    private static final Piece[] PIECES = Piece.values();
+
+    // tiles are 64 by 64 spaces
+    private static final int TILE_SHIFT = 6;
+
+    private final MineSweeperBoard board;
+    private final int width;
+    private final int tilesX;
+
+    // spaces to try opening in each tile next round, null if none
+    private final IntQueue[] pending;
+    private final List<Tile> next = new ArrayList<>();
+
+    /**
+     * Prepares to open the rest of an area
+     * @param board     Board to open spaces on
+     * @param frontier  Queue of opened 0s whose neighbors still need opening,
+     *                  emptied by this
+     */
+    public ParallelReveal(MineSweeperBoard board, IntQueue frontier) {
+        this.board = board;
+        this.width = board.getWidth();
+        this.tilesX = (width + (1 << TILE_SHIFT) - 1) >> TILE_SHIFT;
+        int tilesY = (board.getHeight() + (1 << TILE_SHIFT) - 1) >> TILE_SHIFT;
+        this.pending = new IntQueue[tilesX * tilesY];
+
+        // the neighbors of the frontier start the first round
+        IntConsumer addPending = this::addPending;
+        while(!frontier.isEmpty()) {
+            board.forEachNeighbor(frontier.poll(), addPending);
+        }
+    }
+
+    /**
+     * Opens the area, returning once every reachable space is open
+     */
+    public void run() {
+        while(!next.isEmpty()) {
+            // claim the pending spaces for this round
+            Tile[] round = next.toArray(new Tile[next.size()]);
+            next.clear();
+            for(Tile tile : round) {
+                pending[tile.id] = null;
+            }
+
+            ForkJoinPool.commonPool().invoke(new Round(round, 0, round.length));
+
+            // changes are counted and spaces passed to other tiles back on
+            // this thread, so the board itself needs no locking
+            for(Tile tile : round) {
+                while(!tile.changed.isEmpty()) {
+                    int index = tile.changed.poll();
+                    int old = tile.old.poll();
+                    board.pieceChanged(index, old < 0 ? null : PIECES[old], board.getCell(index));
+                }
+                while(!tile.outside.isEmpty()) {
+                    addPending(tile.outside.poll());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a space to try opening next round
+     * @param index  Index of the space
+     */
+    private void addPending(int index) {
+        int tile = getTile(index);
+        IntQueue queue = pending[tile];
+        if(queue == null) {
+            queue = new IntQueue();
+            pending[tile] = queue;
+            next.add(new Tile(tile, queue));
+        }
+        queue.add(index);
+    }
+
+    /**
+     * Gets the tile containing a space
+     * @param index  Index of the space
+     * @return  the ID of the tile
+     */
+    private int getTile(int index) {
+        return ((index / width) >> TILE_SHIFT) * tilesX + ((index % width) >> TILE_SHIFT);
+    }
+
+    /**
+     * Opens a group of tiles, splitting the group across cores
+     */
+    private static class Round extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Tile[] tiles;
+        private final int from, to;
+
+        public Round(Tile[] tiles, int from, int to) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                tiles[from].open();
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Round(tiles, from, middle), new Round(tiles, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Work for a single tile in a single round
+     */
+    private class Tile {
+        private final int id;
+
+        // spaces to try opening
+        private final IntQueue candidates;
+
+        // spaces opened this round and the pieces they replaced
+        private final IntQueue changed = new IntQueue();
+        private final IntQueue old = new IntQueue();
+
+        // spaces reached in other tiles
+        private final IntQueue outside = new IntQueue();
+
+        public Tile(int id, IntQueue candidates) {
+            this.id = id;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Opens all spaces in the tile reachable from the candidates
+         */
+        public void open() {
+            IntQueue zeros = new IntQueue();
+            IntConsumer visit = (index) -> {
+                if(getTile(index) == id) {
+                    openSpace(index, zeros);
+                }
+                else {
+                    outside.add(index);
+                }
+            };
+
+            while(!candidates.isEmpty()) {
+                openSpace(candidates.poll(), zeros);
+            }
+            while(!zeros.isEmpty()) {
+                board.forEachNeighbor(zeros.poll(), visit);
+            }
+        }
+
+        /**
+         * Opens a space if it can be replaced, queueing it if it is a 0
+         * @param index  Index of the space, must be in this tile
+         * @param zeros  Queue of 0s to open around
+         */
+        private void openSpace(int index, IntQueue zeros) {
+            Piece piece = board.getCell(index);
+            if(!MineSweeperBoard.isReplaceable(piece)) {
+                return;
+            }
+
+            Piece number = board.getNumber(index);
+            board.setCell(index, number);
+            changed.add(index);
+            old.add(piece == null ? -1 : piece.ordinal());
+            if(number == Piece.N0) {
+                zeros.add(index);
+            }
+        }
+    }
+}
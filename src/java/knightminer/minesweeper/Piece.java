@@ -7,7 +7,8 @@ import java.net.URL;
 import javax.swing.ImageIcon;
 
 /**
- * Enum of all piece types
+ * Enum of all piece types. Icons are loaded the first time one is asked for,
+ * so boards can be played without loading any images
  * 
  * @author  KnightMiner
  */
@@ -58,7 +59,6 @@ public enum Piece implements Serializable {
     private int number;
     private boolean enabled;
     private boolean replaceable;
-    private Image icon;
     private Type type;
 
     /**
@@ -71,8 +71,6 @@ public enum Piece implements Serializable {
         this.enabled = enabled;
         this.replaceable = replaceable;
         this.type = type;
-
-        setIcon();
     }
 
     /**
@@ -85,8 +83,6 @@ public enum Piece implements Serializable {
         this.enabled = false;
         this.replaceable = false;
         this.type = Type.NUMBER;
-
-        setIcon();
     }
 
     /**
@@ -94,7 +90,7 @@ public enum Piece implements Serializable {
      * @return the icon
      */
     public Image getIcon() {
-        return icon;
+        return Icons.ICONS[ordinal()];
     }
 
     /**
@@ -170,9 +166,10 @@ public enum Piece implements Serializable {
     }
 
     /**
-     * Sets the pieces icon
+     * Loads the pieces icon
+     * @return  the icon, or null if missing
      */
-    private void setIcon() {
+    private Image loadIcon() {
         // get the icon for this button
         String pathString = "assets/" + getName() + ".png";
         URL path = getClass().getClassLoader()
@@ -181,11 +178,23 @@ public enum Piece implements Serializable {
         // should exist
         if(path != null) {
             // images are so annoying to pull from a path, so imageicon
-            icon = new ImageIcon(path).getImage();
+            return new ImageIcon(path).getImage();
         }
         else {
             System.err.println("Error: cannot find icon at " + pathString);
-            icon = null;
+            return null;
+        }
+    }
+
+    /**
+     * Holds the icons of all pieces, loaded when first used
+     */
+    private static class Icons {
+        private static final Image[] ICONS = new Image[values().length];
+        static {
+            for(Piece piece : values()) {
+                ICONS[piece.ordinal()] = piece.loadIcon();
+            }
         }
     }
 
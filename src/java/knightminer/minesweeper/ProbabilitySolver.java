@@ -0,0 +1,862 @@
+package knightminer.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+
+/**
+ * Finds the chance of each hidden space being a mine, from the numbers and
+ * flags showing on a board.
+ * <p>
+ * Hidden spaces next to a number form the frontier, and the rest are the
+ * interior. Frontier spaces are split into components that share no numbers,
+ * and each component is counted separately by backtracking over its spaces,
+ * keeping the number of solutions for each number of mines it holds. The
+ * interior spaces are alike, so each way of filling the frontier is weighted
+ * by the ways to place the remaining mines in the interior, a binomial term.
+ * Combining the components this way gives exact chances.
+ * <p>
+ * Components are counted in parallel on a {@link ForkJoinPool}. Counting can
+ * take very long for large components, so once the time budget runs out, or
+ * for components too large to try, each space is instead estimated from the
+ * numbers around it and the result is marked as not exact.
+ * <p>
+ * The board is only read at the start of {@link #solve(MineSweeperBoard)}, on
+ * the calling thread. Flags are trusted like in {@link Solver}. When solving
+ * the same board after each move, a {@link Cache} keeps the counts of
+ * components no changed space could affect, so only the rest are counted.
+ *
+ * @author  KnightMiner
+ */
+public class ProbabilitySolver {
+
+    /** Default time allowed for counting, in milliseconds */
+    public static final long DEFAULT_BUDGET = 100;
+
+    // components with more spaces are estimated without counting
+    private static final int MAX_EXACT_SPACES = 512;
+
+    // backtracking steps between checks of the time
+    private static final int CHECK_STEPS = 1 << 12;
+
+    private final ForkJoinPool pool;
+    private final long budget;
+
+    /**
+     * Creates a solver using the common pool and default budget
+     */
+    public ProbabilitySolver() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a solver
+     * @param pool    Pool counting components
+     * @param budget  Time allowed for counting, in milliseconds
+     */
+    public ProbabilitySolver(ForkJoinPool pool, long budget) {
+        this.pool = pool;
+        this.budget = budget;
+    }
+
+    /**
+     * Finds the chance of each hidden space on a board being a mine
+     * @param board  Board to solve
+     * @return  the chances for the board as it is now
+     */
+    public Result solve(MineSweeperBoard board) {
+        return solve(board::getCell, board.getWidth(), board.getHeight(), board.getTotalMines(), null, () -> false);
+    }
+
+    /**
+     * Finds the chance of each hidden space being a mine, reusing counts
+     * from earlier solves
+     * @param cells      Piece on each space by index
+     * @param width      Width of the board
+     * @param height     Height of the board
+     * @param mineCount  Total mines on the board
+     * @param cache      Counts from earlier solves, updated with this one's,
+     *                   or null to count everything
+     * @param cancelled  Checked while counting to stop early
+     * @return  the chances for the pieces given
+     * @throws CancellationException  if cancelled before finishing, leaving
+     *         the cache as it was
+     */
+    Result solve(IntFunction<Piece> cells, int width, int height, int mineCount, Cache cache,
+            BooleanSupplier cancelled) {
+        long deadline = System.nanoTime() + budget * 1000000L;
+        int spaces = width * height;
+
+        // every number touching hidden spaces becomes a constraint over them
+        Map<Integer, Integer> ids = new HashMap<>();
+        IntQueue frontierQueue = new IntQueue();
+        List<int[]> constraints = new ArrayList<>();
+        IntQueue targets = new IntQueue();
+        IntQueue numberQueue = new IntQueue();
+        int hidden = 0;
+        int shownMines = 0;
+        int[] around = new int[8];
+        for(int index = 0; index < spaces; index++) {
+            Piece piece = cells.apply(index);
+            if(piece == null || piece.isMark()) {
+                hidden++;
+                continue;
+            }
+            if(!piece.isNumber()) {
+                shownMines++;
+                continue;
+            }
+
+            int count = 0;
+            int target = piece.getNumber();
+            int x = index % width;
+            int y = index / width;
+            for(int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+                for(int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                    int neighbor = j * width + i;
+                    Piece other = cells.apply(neighbor);
+                    if(other == null || other.isMark()) {
+                        Integer id = ids.get(neighbor);
+                        if(id == null) {
+                            id = ids.size();
+                            ids.put(neighbor, id);
+                            frontierQueue.add(neighbor);
+                        }
+                        around[count++] = id;
+                    }
+                    else if(!other.isNumber()) {
+                        target--;
+                    }
+                }
+            }
+            if(count > 0) {
+                constraints.add(Arrays.copyOf(around, count));
+                targets.add(target);
+                numberQueue.add(index);
+            }
+        }
+
+        int[] frontier = new int[ids.size()];
+        for(int i = 0; i < frontier.length; i++) {
+            frontier[i] = frontierQueue.poll();
+        }
+        int[] target = new int[constraints.size()];
+        int[] numbers = new int[constraints.size()];
+        for(int i = 0; i < target.length; i++) {
+            target[i] = targets.poll();
+            numbers[i] = numberQueue.poll();
+        }
+
+        int interior = hidden - frontier.length;
+        int interiorSample = -1;
+        for(int index = 0; index < spaces && interior > 0 && interiorSample < 0; index++) {
+            Piece piece = cells.apply(index);
+            if((piece == null || piece.isMark()) && !ids.containsKey(index)) {
+                interiorSample = index;
+            }
+        }
+
+        // flags and shown mines are not hidden, so only the rest of the mines
+        // are left to place among the hidden spaces
+        int minesLeft = mineCount - shownMines;
+
+        Component[] components = split(frontier, constraints, target, numbers, deadline, cancelled);
+
+        // only count the components not kept from earlier solves
+        List<Component> uncounted = new ArrayList<>();
+        for(int i = 0; i < components.length; i++) {
+            Component cached = cache == null ? null : cache.get(components[i]);
+            if(cached != null) {
+                components[i] = cached;
+            }
+            else {
+                uncounted.add(components[i]);
+            }
+        }
+        if(!uncounted.isEmpty()) {
+            Component[] counting = uncounted.toArray(new Component[0]);
+            pool.invoke(new Count(counting, 0, counting.length));
+        }
+        if(cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+
+        Result result = combine(frontier.length, components, interior, interiorSample, minesLeft);
+        if(cache != null) {
+            cache.store(components);
+        }
+        return result;
+    }
+
+
+    /* Components */
+
+    /**
+     * Splits the frontier into components that share no constraints
+     * @param frontier     Index of each frontier space
+     * @param constraints  Frontier spaces around each number
+     * @param target       Mines left around each number
+     * @param numbers      Index of each number
+     * @param deadline     Time to stop counting
+     * @param cancelled    Checked while counting to stop early
+     * @return  the components
+     */
+    private static Component[] split(int[] frontier, List<int[]> constraints, int[] target, int[] numbers,
+            long deadline, BooleanSupplier cancelled) {
+        int spaces = frontier.length;
+
+        // join spaces sharing a number
+        int[] parent = new int[spaces];
+        for(int i = 0; i < spaces; i++) {
+            parent[i] = i;
+        }
+        for(int[] constraint : constraints) {
+            int root = find(parent, constraint[0]);
+            for(int i = 1; i < constraint.length; i++) {
+                int other = find(parent, constraint[i]);
+                if(other != root) {
+                    parent[other] = root;
+                }
+            }
+        }
+
+        // number each component, then gather its spaces and constraints
+        int[] componentOf = new int[spaces];
+        int count = 0;
+        int[] roots = new int[spaces];
+        Arrays.fill(roots, -1);
+        for(int i = 0; i < spaces; i++) {
+            int root = find(parent, i);
+            if(roots[root] < 0) {
+                roots[root] = count++;
+            }
+            componentOf[i] = roots[root];
+        }
+
+        List<List<Integer>> constraintLists = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            constraintLists.add(new ArrayList<>());
+        }
+        for(int c = 0; c < constraints.size(); c++) {
+            constraintLists.get(componentOf[constraints.get(c)[0]]).add(c);
+        }
+
+        Component[] components = new Component[count];
+        for(int i = 0; i < count; i++) {
+            components[i] = new Component(constraintLists.get(i), frontier, constraints, target, numbers,
+                    deadline, cancelled);
+        }
+        return components;
+    }
+
+    private static int find(int[] parent, int i) {
+        while(parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Counts a range of components, splitting the range across cores
+     */
+    private static class Count extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Component[] components;
+        private final int from, to;
+
+        public Count(Component[] components, int from, int to) {
+            this.components = components;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                components[from].count();
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Count(components, from, middle), new Count(components, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Group of frontier spaces connected by numbers
+     */
+    private static class Component {
+        // indexes of the spaces, in the order they are assigned
+        private final int[] spaces;
+        // indexes of the numbers, sorted
+        private final int[] numbers;
+        // constraints on each space, by local index
+        private final int[][] spaceConstraints;
+        private final int[] target;
+        private final int[] assigned;
+        private final int[] open;
+        private final boolean[] mine;
+        private final long deadline;
+        private final BooleanSupplier cancelled;
+
+        // solutions with each number of mines, and how many of them have a
+        // mine on each space
+        private double[] solutions;
+        private double[][] spaceSolutions;
+
+        // estimate used when not counted
+        private boolean exact;
+        private double[] estimate;
+
+        private int steps;
+        private boolean timedOut;
+
+        /**
+         * Gathers the spaces of a component
+         * @param ids          Constraints in the component
+         * @param frontier     Index of each frontier space
+         * @param constraints  Frontier spaces around each number
+         * @param targets      Mines left around each number
+         * @param numbers      Index of each number
+         * @param deadline     Time to stop counting
+         * @param cancelled    Checked while counting to stop early
+         */
+        public Component(List<Integer> ids, int[] frontier, List<int[]> constraints, int[] targets,
+                int[] numbers, long deadline, BooleanSupplier cancelled) {
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+            int count = ids.size();
+            this.numbers = new int[count];
+            this.target = new int[count];
+            this.assigned = new int[count];
+            this.open = new int[count];
+
+            // order spaces so each constraint's spaces are assigned close together,
+            // which lets backtracking fail early
+            Map<Integer, Integer> local = new HashMap<>();
+            List<List<Integer>> byLocal = new ArrayList<>();
+            for(int c = 0; c < count; c++) {
+                int[] constraint = constraints.get(ids.get(c));
+                target[c] = targets[ids.get(c)];
+                this.numbers[c] = numbers[ids.get(c)];
+                open[c] = constraint.length;
+                for(int space : constraint) {
+                    Integer index = local.get(space);
+                    if(index == null) {
+                        index = local.size();
+                        local.put(space, index);
+                        byLocal.add(new ArrayList<>());
+                    }
+                    byLocal.get(index).add(c);
+                }
+            }
+
+            this.spaces = new int[local.size()];
+            for(Map.Entry<Integer, Integer> entry : local.entrySet()) {
+                spaces[entry.getValue()] = frontier[entry.getKey()];
+            }
+            this.spaceConstraints = new int[spaces.length][];
+            for(int i = 0; i < spaces.length; i++) {
+                List<Integer> list = byLocal.get(i);
+                spaceConstraints[i] = new int[list.size()];
+                for(int j = 0; j < list.size(); j++) {
+                    spaceConstraints[i][j] = list.get(j);
+                }
+            }
+            this.mine = new boolean[spaces.length];
+        }
+
+        /**
+         * Counts the solutions, or estimates if too large or out of time
+         */
+        public void count() {
+            if(spaces.length <= MAX_EXACT_SPACES) {
+                solutions = new double[spaces.length + 1];
+                spaceSolutions = new double[spaces.length + 1][spaces.length];
+                search(0, 0);
+                exact = !timedOut;
+            }
+            if(!exact) {
+                solutions = null;
+                spaceSolutions = null;
+                estimate();
+            }
+        }
+
+        /**
+         * Tries both values for a space, then the spaces after it
+         * @param space  Local index of the space
+         * @param mines  Mines placed so far
+         */
+        private void search(int space, int mines) {
+            if(timedOut) {
+                return;
+            }
+            if(++steps == CHECK_STEPS) {
+                steps = 0;
+                if(System.nanoTime() > deadline || cancelled.getAsBoolean()) {
+                    timedOut = true;
+                    return;
+                }
+            }
+
+            if(space == spaces.length) {
+                solutions[mines]++;
+                double[] counts = spaceSolutions[mines];
+                for(int i = 0; i < spaces.length; i++) {
+                    if(mine[i]) {
+                        counts[i]++;
+                    }
+                }
+                return;
+            }
+
+            for(int value = 0; value <= 1; value++) {
+                if(fits(space, value)) {
+                    for(int c : spaceConstraints[space]) {
+                        assigned[c] += value;
+                        open[c]--;
+                    }
+                    mine[space] = value == 1;
+                    search(space + 1, mines + value);
+                    for(int c : spaceConstraints[space]) {
+                        assigned[c] -= value;
+                        open[c]++;
+                    }
+                }
+            }
+            mine[space] = false;
+        }
+
+        /**
+         * Checks if a value for a space can still satisfy all its constraints
+         */
+        private boolean fits(int space, int value) {
+            for(int c : spaceConstraints[space]) {
+                int mines = assigned[c] + value;
+                if(mines > target[c] || mines + open[c] - 1 < target[c]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Estimates each space as the average density of the numbers around it
+         */
+        private void estimate() {
+            estimate = new double[spaces.length];
+            for(int i = 0; i < spaces.length; i++) {
+                double total = 0;
+                for(int c : spaceConstraints[i]) {
+                    total += Math.min(Math.max((double) target[c] / open[c], 0), 1);
+                }
+                estimate[i] = total / spaceConstraints[i].length;
+            }
+        }
+
+        /**
+         * Gets the chance of the component holding each number of mines,
+         * relative to the most likely
+         */
+        private double[] distribution() {
+            if(!exact) {
+                double expected = 0;
+                for(double chance : estimate) {
+                    expected += chance;
+                }
+                double[] point = new double[spaces.length + 1];
+                point[(int) Math.round(expected)] = 1;
+                return point;
+            }
+
+            double max = 0;
+            for(double count : solutions) {
+                max = Math.max(max, count);
+            }
+            double[] scaled = new double[solutions.length];
+            for(int k = 0; k < solutions.length; k++) {
+                scaled[k] = max > 0 ? solutions[k] / max : 0;
+            }
+            return scaled;
+        }
+    }
+
+
+    /* Combining */
+
+    /**
+     * Combines the component counts with the interior into chances
+     */
+    private static Result combine(int frontierSize, Component[] components, int interior, int interiorSample,
+            int minesLeft) {
+        int count = components.length;
+        double[][] distributions = new double[count][];
+        boolean exact = true;
+        for(int i = 0; i < count; i++) {
+            distributions[i] = components[i].distribution();
+            exact &= components[i].exact;
+        }
+
+        // mines in all components before and after each one
+        double[][] before = new double[count + 1][];
+        double[][] after = new double[count + 1][];
+        before[0] = new double[] {1};
+        after[count] = new double[] {1};
+        for(int i = 0; i < count; i++) {
+            before[i + 1] = convolve(before[i], distributions[i]);
+        }
+        for(int i = count - 1; i >= 0; i--) {
+            after[i] = convolve(distributions[i], after[i + 1]);
+        }
+
+        // ways to place the mines left in the interior for each frontier total
+        double[] all = before[count];
+        double[] weights = interiorWeights(all.length, interior, minesLeft);
+        double total = 0;
+        double interiorMines = 0;
+        for(int f = 0; f < all.length; f++) {
+            double ways = all[f] * weights[f];
+            total += ways;
+            interiorMines += ways * (minesLeft - f);
+        }
+
+        // chances are listed in component order
+        int[] frontier = new int[frontierSize];
+        double[] chances = new double[frontierSize];
+        double interiorChance;
+        if(total <= 0) {
+            // no solutions, most likely a wrong flag, so estimate everything
+            exact = false;
+            for(Component component : components) {
+                if(component.exact) {
+                    component.exact = false;
+                    component.estimate();
+                }
+            }
+            interiorChance = interior > 0 ? Math.min(Math.max((double) minesLeft / (interior + frontierSize), 0), 1) : 0;
+        }
+        else {
+            interiorChance = interior > 0 ? interiorMines / total / interior : 0;
+        }
+
+        int next = 0;
+        for(int i = 0; i < count; i++) {
+            Component component = components[i];
+            int first = next;
+            next += component.spaces.length;
+            System.arraycopy(component.spaces, 0, frontier, first, component.spaces.length);
+            if(!component.exact) {
+                System.arraycopy(component.estimate, 0, chances, first, component.spaces.length);
+                continue;
+            }
+
+            // weight of each mine count in this component, given the others
+            // and the interior, divided by the weight of all its solutions
+            double[] others = convolve(before[i], after[i + 1]);
+            double[] factor = new double[component.solutions.length];
+            double ways = 0;
+            for(int k = 0; k < factor.length; k++) {
+                for(int r = 0; r < others.length && k + r < weights.length; r++) {
+                    factor[k] += others[r] * weights[k + r];
+                }
+                ways += component.solutions[k] * factor[k];
+            }
+            for(int s = 0; s < component.spaces.length; s++) {
+                double chance = 0;
+                for(int k = 0; k < factor.length; k++) {
+                    chance += component.spaceSolutions[k][s] * factor[k];
+                }
+                chances[first + s] = ways > 0 ? chance / ways : 0;
+            }
+        }
+
+        return new Result(frontier, chances, interiorChance, interior, interiorSample, exact);
+    }
+
+    /**
+     * Gets the ways to place the mines left in the interior for each number
+     * of mines in the frontier, relative to the most ways
+     * @param length     Possible frontier totals
+     * @param interior   Interior spaces
+     * @param minesLeft  Mines left to place
+     * @return  the relative number of ways for each frontier total
+     */
+    private static double[] interiorWeights(int length, int interior, int minesLeft) {
+        // log of choose(interior, minesLeft - f), using the ratio between neighbors
+        double[] logs = new double[length];
+        boolean[] valid = new boolean[length];
+        double max = Double.NEGATIVE_INFINITY;
+        double log = 0;
+        boolean started = false;
+        for(int f = length - 1; f >= 0; f--) {
+            int inside = minesLeft - f;
+            if(inside < 0 || inside > interior) {
+                started = false;
+                continue;
+            }
+            if(started) {
+                // choose(n, k) = choose(n, k - 1) * (n - k + 1) / k
+                log += Math.log((double) (interior - inside + 1) / inside);
+            }
+            else {
+                log = logChoose(interior, inside);
+                started = true;
+            }
+            logs[f] = log;
+            valid[f] = true;
+            max = Math.max(max, log);
+        }
+
+        double[] weights = new double[length];
+        for(int f = 0; f < length; f++) {
+            weights[f] = valid[f] ? Math.exp(logs[f] - max) : 0;
+        }
+        return weights;
+    }
+
+    /**
+     * Gets the log of a binomial coefficient
+     */
+    private static double logChoose(int n, int k) {
+        k = Math.min(k, n - k);
+        double log = 0;
+        for(int i = 1; i <= k; i++) {
+            log += Math.log((double) (n - k + i) / i);
+        }
+        return log;
+    }
+
+    /**
+     * Gets the distribution of the sum of two independent counts, rescaled
+     * so the largest entry is 1
+     */
+    private static double[] convolve(double[] a, double[] b) {
+        double[] sum = new double[a.length + b.length - 1];
+        for(int i = 0; i < a.length; i++) {
+            if(a[i] == 0) {
+                continue;
+            }
+            for(int j = 0; j < b.length; j++) {
+                sum[i + j] += a[i] * b[j];
+            }
+        }
+
+        double max = 0;
+        for(double value : sum) {
+            max = Math.max(max, value);
+        }
+        if(max > 0) {
+            for(int i = 0; i < sum.length; i++) {
+                sum[i] /= max;
+            }
+        }
+        return sum;
+    }
+
+
+    /**
+     * Counts kept between solves of the same board. Spaces changed since the
+     * last solve are marked, and a component is only counted again if one of
+     * its numbers is within two spaces of a change, as anything further away
+     * cannot change the number's hidden neighbors or which numbers they touch.
+     * Only one solve may use a cache at a time.
+     */
+    static class Cache {
+        private final int width, height;
+
+        // spaces changed since the last solve, or all of them
+        private final UpdateSet changed;
+        private boolean changedAll = true;
+
+        // exact components from the last solve, by their lowest number
+        private Map<Integer, Component> components = new HashMap<>();
+
+        /**
+         * Creates an empty cache
+         * @param width   Width of the board
+         * @param height  Height of the board
+         */
+        public Cache(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.changed = new UpdateSet(width, height);
+        }
+
+        /**
+         * Marks a space as changed since the last solve
+         * @param index  Index of the space
+         */
+        public void changed(int index) {
+            changed.mark(index);
+        }
+
+        /**
+         * Marks every space as changed, so nothing is reused
+         */
+        public void changedAll() {
+            changedAll = true;
+        }
+
+        /**
+         * Finds the counts of a component from the last solve
+         * @param component  Component of this solve
+         * @return  the counted component, or null if it may have changed
+         */
+        private Component get(Component component) {
+            if(changedAll) {
+                return null;
+            }
+            Component cached = components.get(component.numbers[0]);
+            if(cached == null || !Arrays.equals(cached.numbers, component.numbers)) {
+                return null;
+            }
+            for(int number : component.numbers) {
+                if(isNearChange(number)) {
+                    return null;
+                }
+            }
+            return cached;
+        }
+
+        /**
+         * Checks if a space is within two spaces of a change
+         * @param index  Index of the space
+         */
+        private boolean isNearChange(int index) {
+            if(changed.isEmpty()) {
+                return false;
+            }
+            int x = index % width;
+            int y = index / width;
+            // nothing outside the changed rectangle needs checking
+            if(x + 2 < changed.getMinX() || x - 2 > changed.getMaxX()
+                    || y + 2 < changed.getMinY() || y - 2 > changed.getMaxY()) {
+                return false;
+            }
+            for(int j = Math.max(y - 2, 0); j <= Math.min(y + 2, height - 1); j++) {
+                for(int i = Math.max(x - 2, 0); i <= Math.min(x + 2, width - 1); i++) {
+                    if(changed.contains(j * width + i)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Keeps the exact components of a finished solve, forgetting the changes
+         * @param counted  Components of the solve
+         */
+        private void store(Component[] counted) {
+            Map<Integer, Component> kept = new HashMap<>();
+            for(Component component : counted) {
+                if(component.exact) {
+                    kept.put(component.numbers[0], component);
+                }
+            }
+            components = kept;
+            changed.clear();
+            changedAll = false;
+        }
+    }
+
+
+    /**
+     * Chances of each hidden space being a mine, as of when the board was solved
+     */
+    public static class Result {
+        // frontier spaces by index, and their chances
+        private final int[] frontier;
+        private final double[] chances;
+        private final double interiorChance;
+        private final int interior;
+        private final int interiorSample;
+        private final boolean exact;
+
+        private Result(int[] frontier, double[] chances, double interiorChance, int interior,
+                int interiorSample, boolean exact) {
+            // sort by space so lookups can search
+            Integer[] order = new Integer[frontier.length];
+            for(int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(frontier[a], frontier[b]));
+            this.frontier = new int[frontier.length];
+            this.chances = new double[frontier.length];
+            for(int i = 0; i < order.length; i++) {
+                this.frontier[i] = frontier[order[i]];
+                this.chances[i] = chances[order[i]];
+            }
+
+            this.interiorChance = interiorChance;
+            this.interior = interior;
+            this.interiorSample = interiorSample;
+            this.exact = exact;
+        }
+
+        /**
+         * Gets the chance a space is a mine. Only meaningful for spaces that
+         * were hidden when solved
+         * @param index  Index of the space
+         * @return  the chance from 0 to 1
+         */
+        public double getProbability(int index) {
+            int found = Arrays.binarySearch(frontier, index);
+            return found >= 0 ? chances[found] : interiorChance;
+        }
+
+        /**
+         * Gets the chance of a mine on any space not next to a number
+         * @return  the chance from 0 to 1
+         */
+        public double getInteriorProbability() {
+            return interiorChance;
+        }
+
+        /**
+         * Gets the hidden spaces next to a number
+         * @return  the frontier spaces, sorted by index
+         */
+        public int[] getFrontier() {
+            return frontier.clone();
+        }
+
+        /**
+         * Checks if every chance was counted rather than estimated
+         * @return  true if the chances are exact
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        /**
+         * Gets the hidden space least likely to be a mine, preferring the
+         * frontier on ties as opening it tells more
+         * @return  the index of the space, or -1 if there are no hidden spaces
+         */
+        public int getSafest() {
+            int best = -1;
+            double bestChance = 2;
+            for(int i = 0; i < frontier.length; i++) {
+                if(chances[i] < bestChance) {
+                    bestChance = chances[i];
+                    best = frontier[i];
+                }
+            }
+            if(interior > 0 && interiorChance < bestChance) {
+                best = interiorSample;
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package knightminer.minesweeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+import knightminer.minesweeper.MineSweeperBoard.Placement;
+
+/**
+ * A recorded game: the board settings, the seed, and every move that changed
+ * the board. Since the mines only depend on the seed and the first click, this
+ * is enough to play the game again exactly. The mines are generated when the
+ * replay starts, as the click that generated them may have been undone.
+ * <p>
+ * Moves are packed into a single long each, the index of the space shifted
+ * left three bits with the click action in the low bits, so any index fits. A
+ * restart is stored as {@link #RESTART}. Files store the index and action
+ * separately; version 1 files packed both into an int, which only fit boards
+ * under 2^29 spaces.
+ *
+ * @author  KnightMiner
+ */
+public class Replay {
+
+    /** Move restarting the game with the same mines */
+    public static final long RESTART = 7;
+
+    /** First click of a replay that never generated mines */
+    public static final int NOT_STARTED = -2;
+
+    // "MSRP" in ASCII, used to recognize replay files
+    private static final int MAGIC = 0x4D535250;
+    private static final int VERSION = 2;
+
+    private static final ClickAction[] ACTIONS = ClickAction.values();
+    private static final Placement[] PLACEMENTS = Placement.values();
+
+    // board settings
+    private final int width, height, mineCount, cheats;
+    private final Placement placement;
+    private final long seed;
+
+    // index of the click that generated the mines, -1 for a cheat, or
+    // NOT_STARTED if they were never generated
+    private final int firstClick;
+
+    // packed moves in order
+    private final long[] moves;
+
+    /**
+     * Creates a new replay
+     * @param width      Width of the board
+     * @param height     Height of the board
+     * @param mineCount  Mines requested
+     * @param cheats     Cheats allowed
+     * @param placement  Method used to place the mines
+     * @param seed       Seed for the mines
+     * @param firstClick Index of the click generating the mines, -1 if a
+     *                   cheat, or NOT_STARTED if never generated
+     * @param moves      Packed moves, not copied
+     */
+    public Replay(int width, int height, int mineCount, int cheats, Placement placement, long seed,
+            int firstClick, long[] moves) {
+        this.width = width;
+        this.height = height;
+        this.mineCount = mineCount;
+        this.cheats = cheats;
+        this.placement = placement;
+        this.seed = seed;
+        this.firstClick = firstClick;
+        this.moves = moves;
+    }
+
+    /**
+     * Creates a board in the state at the start of the replay
+     * @return  a new board
+     */
+    public MineSweeperBoard createBoard() {
+        MineSweeperBoard board = new MineSweeperBoard(width, height, mineCount, cheats);
+        board.setPlacement(placement);
+        if(firstClick != NOT_STARTED) {
+            board.startGame(seed, firstClick);
+        }
+        return board;
+    }
+
+    /**
+     * Applies a move to a board
+     * @param board  Board to update
+     * @param move   Packed move
+     */
+    public static void apply(MineSweeperBoard board, long move) {
+        if(move == RESTART) {
+            board.restart();
+        }
+        else {
+            board.handleClick((int) (move >>> 3), ACTIONS[(int) move & 7]);
+        }
+    }
+
+    /**
+     * Packs a click into a single long
+     * @param index   Index of the space clicked
+     * @param action  Type of click
+     * @return  the packed move
+     */
+    public static long packClick(int index, ClickAction action) {
+        return (long) index << 3 | action.ordinal();
+    }
+
+
+    /* Files */
+
+    /**
+     * Saves the replay to a binary file
+     * @param filename  Location of the replay, without the extension
+     * @throws IOException  if the file cannot be written
+     */
+    public void save(String filename) throws IOException {
+        try(DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename + ".replay")))) {
+            stream.writeInt(MAGIC);
+            stream.writeShort(VERSION);
+            stream.writeInt(width);
+            stream.writeInt(height);
+            stream.writeInt(mineCount);
+            stream.writeInt(cheats);
+            stream.writeByte(placement.ordinal());
+            stream.writeLong(seed);
+            stream.writeInt(firstClick);
+            stream.writeInt(moves.length);
+            for(long move : moves) {
+                stream.writeInt((int) (move >>> 3));
+                stream.writeByte((int) move & 7);
+            }
+        }
+    }
+
+    /**
+     * Loads a replay from a binary file
+     * @param filename  Location of the replay, without the extension
+     * @return  the replay
+     * @throws IOException  if the file cannot be read or is not a replay
+     */
+    public static Replay load(String filename) throws IOException {
+        try(DataInputStream stream = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename + ".replay")))) {
+            if(stream.readInt() != MAGIC) {
+                throw new IOException("Not a replay file");
+            }
+            int version = stream.readShort();
+            if(version < 1 || version > VERSION) {
+                throw new IOException("Unsupported replay version " + version);
+            }
+
+            int width = stream.readInt();
+            int height = stream.readInt();
+            int mineCount = stream.readInt();
+            int cheats = stream.readInt();
+            int placement = stream.readByte();
+            if(placement < 0 || placement >= PLACEMENTS.length) {
+                throw new IOException("Unknown mine placement " + placement);
+            }
+            long seed = stream.readLong();
+            int firstClick = stream.readInt();
+
+            long[] moves = new long[stream.readInt()];
+            for(int i = 0; i < moves.length; i++) {
+                if(version == 1) {
+                    moves[i] = stream.readInt();
+                }
+                else {
+                    moves[i] = (long) stream.readInt() << 3 | (stream.readByte() & 7);
+                }
+            }
+            return new Replay(width, height, mineCount, cheats, PLACEMENTS[placement], seed, firstClick, moves);
+        }
+    }
+
+
+    /* Data */
+
+    /**
+     * Gets the number of moves in the replay
+     * @return  the number of moves
+     */
+    public int size() {
+        return moves.length;
+    }
+
+    /**
+     * Gets a packed move
+     * @param move  Position of the move
+     * @return  the packed move
+     */
+    public long getMove(int move) {
+        return moves[move];
+    }
+
+    /**
+     * Gets the seed for the mines
+     * @return  the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the width of the board
+     * @return  the width of the board
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the board
+     * @return  the height of the board
+     */
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,137 @@
+package knightminer.minesweeper;
+
+/**
+ * Plays back a replay, with the ability to jump to any move. A copy of the
+ * board is kept every so many moves as a keyframe, so jumping only plays the
+ * moves since the nearest keyframe rather than the whole game.
+ *
+ * @author  KnightMiner
+ */
+public class ReplayPlayer {
+
+    // moves between keyframes if not specified
+    private static final int DEFAULT_INTERVAL = 1024;
+
+    private final Replay replay;
+    private final int interval;
+
+    // board after each multiple of interval moves, null if not reached yet
+    private final MineSweeperBoard[] keyframes;
+
+    // board being played and the number of moves applied to it
+    private MineSweeperBoard board;
+    private int position;
+
+    /**
+     * Creates a new player at the start of the replay
+     * @param replay  Replay to play
+     */
+    public ReplayPlayer(Replay replay) {
+        this(replay, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Creates a new player at the start of the replay
+     * @param replay    Replay to play
+     * @param interval  Moves between keyframes. Smaller jumps faster but keeps
+     *                  more copies of the board
+     */
+    public ReplayPlayer(Replay replay, int interval) {
+        this.replay = replay;
+        this.interval = Math.max(interval, 1);
+        this.keyframes = new MineSweeperBoard[replay.size() / this.interval + 1];
+
+        keyframes[0] = replay.createBoard();
+        setBoard(keyframes[0]);
+    }
+
+    /**
+     * Plays the next move
+     * @return  false if there were no moves left
+     */
+    public boolean step() {
+        if(position >= replay.size()) {
+            return false;
+        }
+
+        Replay.apply(board, replay.getMove(position));
+        position++;
+
+        // store a keyframe the first time we pass one
+        if(position % interval == 0 && keyframes[position / interval] == null) {
+            keyframes[position / interval] = board.copy();
+        }
+        return true;
+    }
+
+    /**
+     * Jumps to the board after a number of moves
+     * @param move  Number of moves to apply, from 0 to the replay size
+     */
+    public void seek(int move) {
+        move = Math.max(0, Math.min(move, replay.size()));
+
+        // find the closest keyframe we already have
+        int keyframe = move / interval;
+        while(keyframes[keyframe] == null) {
+            keyframe--;
+        }
+
+        // only restore it if it is closer than continuing from here
+        int start = keyframe * interval;
+        if(move < position || start > position) {
+            setBoard(keyframes[keyframe]);
+            position = start;
+        }
+
+        while(position < move) {
+            step();
+        }
+    }
+
+    /**
+     * Plays all remaining moves
+     */
+    public void finish() {
+        seek(replay.size());
+    }
+
+    /**
+     * Switches to a copy of a keyframe, so the keyframe itself is not changed
+     * @param keyframe  Board to copy
+     */
+    private void setBoard(MineSweeperBoard keyframe) {
+        board = keyframe.copy();
+
+        // moves come from the replay, so there is nothing to undo
+        board.setJournalCapacity(0);
+    }
+
+
+    /* Data */
+
+    /**
+     * Gets the board at the current move. The board is replaced when seeking
+     * back, so get it again after calling seek()
+     * @return  the board
+     */
+    public MineSweeperBoard getBoard() {
+        return board;
+    }
+
+    /**
+     * Gets the number of moves applied to the board
+     * @return  the current move
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the replay being played
+     * @return  the replay
+     */
+    public Replay getReplay() {
+        return replay;
+    }
+}
@@ -0,0 +1,129 @@
+package knightminer.minesweeper;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+
+/**
+ * Records the moves made on a board so the game can be replayed. Each move is
+ * stored as a single packed long, see {@link Replay#packClick(int, ClickAction)}.
+ * Undone moves are removed from the recording, so the replay shows the game
+ * as it ended up being played.
+ * <p>
+ * Created by {@link MineSweeperBoard#startRecording()}.
+ *
+ * @author  KnightMiner
+ */
+public class ReplayRecorder implements MoveListener {
+
+    private final MineSweeperBoard board;
+
+    // board settings at the start of the recording
+    private final int width, height, mineCount, cheats;
+
+    // settings used by the click that generated the mines
+    private MineSweeperBoard.Placement placement;
+    private long seed;
+    private int firstClick = Replay.NOT_STARTED;
+
+    // packed moves, the ones past size were undone and can be redone
+    private long[] moves = new long[64];
+    private int size;
+    private int limit;
+
+    /**
+     * Creates a new recorder for a board
+     * @param board  Board to record
+     */
+    ReplayRecorder(MineSweeperBoard board) {
+        this.board = board;
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.mineCount = board.getMineCount();
+        this.cheats = board.getCheatsAllowed();
+        this.placement = board.getPlacement();
+    }
+
+    @Override
+    public void clicked(int index, ClickAction action) {
+        add(Replay.packClick(index, action));
+    }
+
+    /**
+     * Records the settings used to generate the mines. The placement can
+     * change later, so store what the mines used
+     * @param clicked  Index of the space kept clear, or -1 for none
+     */
+    @Override
+    public void started(int clicked) {
+        placement = board.getPlacement();
+        seed = board.getSeed();
+        firstClick = clicked;
+    }
+
+    @Override
+    public void restarted() {
+        add(Replay.RESTART);
+    }
+
+    /**
+     * Removes the last move after it was undone
+     */
+    @Override
+    public void undone() {
+        if(size > 0) {
+            size--;
+        }
+    }
+
+    /**
+     * Adds back the last undone move after it was redone
+     */
+    @Override
+    public void redone() {
+        if(size < limit) {
+            size++;
+        }
+    }
+
+    /**
+     * Removes all moves when a new game starts
+     */
+    @Override
+    public void cleared() {
+        size = limit = 0;
+        firstClick = Replay.NOT_STARTED;
+        placement = board.getPlacement();
+    }
+
+    /**
+     * Adds a move, forgetting any undone moves
+     * @param move  Packed move
+     */
+    private void add(long move) {
+        if(size == moves.length) {
+            long[] grown = new long[moves.length << 1];
+            System.arraycopy(moves, 0, grown, 0, size);
+            moves = grown;
+        }
+        moves[size] = move;
+        size++;
+        limit = size;
+    }
+
+    /**
+     * Gets the number of moves recorded
+     * @return  the number of moves
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a replay of the moves so far
+     * @return  a replay of the game
+     */
+    public Replay toReplay() {
+        long[] copy = new long[size];
+        System.arraycopy(moves, 0, copy, 0, size);
+        return new Replay(width, height, mineCount, cheats, placement, seed, firstClick, copy);
+    }
+}
@@ -0,0 +1,254 @@
+package knightminer.minesweeper;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Panel listing the saved games, using {@link SaveIndex} so no boards are
+ * loaded until one is picked. Columns hold numbers rather than text, so they
+ * sort by value, and are shown as text by a renderer
+ *
+ * @author  KnightMiner
+ */
+public class SaveBrowser extends JPanel {
+    // saves are named relative to the working directory
+    private static final Path DIRECTORY = Paths.get("");
+
+    private static final String[] COLUMNS = {"Name", "Size", "Mines left", "Progress", "Seed", "Saved"};
+    private static final Class<?>[] COLUMN_CLASSES = {String.class, Long.class, Integer.class, Double.class,
+            String.class, Long.class};
+    // columns shown by the renderer
+    private static final int SIZE = 1;
+    private static final int PROGRESS = 3;
+    private static final int SAVED = 5;
+
+    private final List<SaveIndex.Entry> entries;
+    private final JTable table;
+
+    /**
+     * Creates a panel listing saves
+     * @param entries  Saves to list
+     */
+    public SaveBrowser(List<SaveIndex.Entry> entries) {
+        this.entries = entries;
+        setLayout(new BorderLayout());
+
+        table = new JTable(new Model());
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setAutoCreateRowSorter(true);
+        Renderer renderer = new Renderer();
+        for(int column : new int[] {SIZE, PROGRESS, SAVED}) {
+            table.getColumnModel().getColumn(column).setCellRenderer(renderer);
+        }
+        if(!entries.isEmpty()) {
+            table.setRowSelectionInterval(0, 0);
+        }
+
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setPreferredSize(new Dimension(600, 300));
+        add(scroll, BorderLayout.CENTER);
+    }
+
+    /**
+     * Gets the save currently selected
+     * @return  the name of the save, or null if none is selected
+     */
+    public String getSelected() {
+        int row = table.getSelectedRow();
+        if(row < 0) {
+            return null;
+        }
+        return entries.get(table.convertRowIndexToModel(row)).getName();
+    }
+
+    /**
+     * Shows the saves and loads the one picked in the background. The saves
+     * are listed in the background too, as a directory that changed has every
+     * new save read
+     * @param parent  Currently open GUI
+     */
+    public static void showSaves(JFrame parent) {
+        parent.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<List<SaveIndex.Entry>, Void>() {
+            @Override
+            protected List<SaveIndex.Entry> doInBackground() throws IOException {
+                return SaveIndex.list(DIRECTORY);
+            }
+
+            @Override
+            protected void done() {
+                parent.setCursor(null);
+                try {
+                    pick(parent, get());
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                catch(ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    JOptionPane.showMessageDialog(parent,
+                            "Error listing saved games: " + e.getCause().getMessage(),
+                            "MineSweeper - Saved games",
+                            JOptionPane.ERROR_MESSAGE
+                            );
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Asks which save to load, and loads it in the background
+     * @param parent   Currently open GUI
+     * @param entries  Saves to pick from
+     */
+    private static void pick(JFrame parent, List<SaveIndex.Entry> entries) {
+        if(entries.isEmpty()) {
+            JOptionPane.showMessageDialog(parent,
+                    "There are no saved games",
+                    "MineSweeper - Saved games",
+                    JOptionPane.INFORMATION_MESSAGE
+                    );
+            return;
+        }
+
+        SaveBrowser browser = new SaveBrowser(entries);
+        int result = JOptionPane.showConfirmDialog(parent, browser,
+                "MineSweeper - Saved games", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE);
+
+        // if they pressed OK with a save picked
+        String name = browser.getSelected();
+        if(result == JOptionPane.OK_OPTION && name != null) {
+            SaveWorker.load(parent, DIRECTORY.resolve(name).toString());
+        }
+    }
+
+    /**
+     * Table columns for each save. Details a save does not hold are null
+     */
+    private class Model extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return entries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            SaveIndex.Entry entry = entries.get(row);
+            if(column == 0) {
+                return entry.getName();
+            }
+            if(column == SAVED) {
+                return entry.getModified();
+            }
+
+            // older saves must be loaded to learn more
+            if(!entry.hasDetails()) {
+                return null;
+            }
+            switch(column) {
+                case SIZE:
+                    return (long) entry.getWidth() * entry.getHeight();
+                case 2:
+                    return entry.getMinesLeft();
+                case PROGRESS:
+                    // finished and unstarted games sort with their progress
+                    if(entry.hasWon()) {
+                        return 1.0;
+                    }
+                    if(!entry.isStarted()) {
+                        return 0.0;
+                    }
+                    double progress = entry.getProgress();
+                    if(progress < 0) {
+                        return entry.gameOver() ? 0.0 : null;
+                    }
+                    return progress;
+                case 4:
+                    return entry.isStarted() ? Long.toHexString(entry.getSeed()) : "";
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Shows the size, progress, and time of a save as text
+     */
+    private class Renderer extends DefaultTableCellRenderer {
+        private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                boolean hasFocus, int row, int column) {
+            String text = "";
+            if(value != null) {
+                SaveIndex.Entry entry = entries.get(table.convertRowIndexToModel(row));
+                text = format(entry, table.convertColumnIndexToModel(column));
+            }
+            return super.getTableCellRendererComponent(table, text, isSelected, hasFocus, row, column);
+        }
+
+        /**
+         * Formats a column of a save
+         * @param entry   Save to format
+         * @param column  Model column
+         * @return  the text to show
+         */
+        private String format(SaveIndex.Entry entry, int column) {
+            switch(column) {
+                case SIZE:
+                    return entry.getWidth() + "x" + entry.getHeight();
+                case PROGRESS:
+                    if(entry.hasWon()) {
+                        return "Won";
+                    }
+                    if(entry.gameOver()) {
+                        return "Lost";
+                    }
+                    if(!entry.isStarted()) {
+                        return "Not started";
+                    }
+                    return (int) (entry.getProgress() * 100) + "%";
+                case SAVED:
+                    return dateFormat.format(new Date(entry.getModified()));
+                default:
+                    return "";
+            }
+        }
+    }
+}
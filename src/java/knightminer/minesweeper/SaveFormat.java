@@ -0,0 +1,413 @@
+package knightminer.minesweeper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+import knightminer.minesweeper.MineSweeperBoard.Placement;
+
+/**
+ * Binary save format for boards, in place of Java serialization.
+ * <p>
+ * The file starts with a header holding the magic number, version, board
+ * dimensions, counters, game status, and seed. The header is laid out the same
+ * as in tiled saves, so {@link SaveIndex} can read either without the board. The mines follow, either as a
+ * bitset with one bit for each space or as the settings of a hashed
+ * placement. The spaces come last, run length encoded as a varint count
+ * followed by the piece ID, so large empty or opened areas take a few bytes.
+ * <p>
+ * Files are read and written through a buffered file channel.
+ *
+ * @author  KnightMiner
+ */
+class SaveFormat {
+
+    /** "MSWB" in ASCII, used to tell these files apart from older saves */
+    public static final int MAGIC = 0x4D535742;
+    /** Current format version. Version 2 added the number of revealed spaces to the header */
+    public static final int VERSION = 2;
+
+    // ways of storing the mines
+    private static final int MINES_NONE = 0;
+    private static final int MINES_BITSET = 1;
+    private static final int MINES_HASHED = 2;
+
+    // bits for the game status, shared with tiled saves
+    static final int GAME_OVER = 1;
+    static final int VICTORY = 2;
+    static final int STARTED = 4;
+
+    static final Placement[] PLACEMENTS = Placement.values();
+
+    // largest valid piece ID, as IDs are the ordinal plus one
+    static final int PIECE_COUNT = Piece.values().length;
+
+    // size of the buffer between the board and the file
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // spaces between progress updates
+    private static final int PROGRESS_STEP = 1 << 16;
+
+    private SaveFormat() {}
+
+    /**
+     * Reads the magic number at the start of a file, to tell which format
+     * a save is in
+     * @param path  File to check
+     * @return  the first four bytes of the file, or 0 if it is shorter
+     * @throws IOException  if the file cannot be read
+     */
+    public static int readMagic(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while(magic.hasRemaining() && channel.read(magic) >= 0) {}
+            return magic.hasRemaining() ? 0 : magic.getInt(0);
+        }
+    }
+
+    /**
+     * Writes a board to a file
+     * @param board     Board to write
+     * @param path      File to write to
+     * @param progress  Told how many spaces are written
+     * @throws IOException  if the file cannot be written
+     */
+    public static void write(MineSweeperBoard board, Path path, Progress progress) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+
+            // header
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            out.putInt(board.getWidth());
+            out.putInt(board.getHeight());
+            out.putInt(board.getMineCount());
+            out.putInt(board.getFlagCount());
+            out.putInt(board.getRevealed());
+            out.putInt(board.getCheatsAllowed());
+            out.putInt(board.getCheats());
+            out.putByte((board.gameOver() ? GAME_OVER : 0) | (board.hasWon() ? VICTORY : 0)
+                    | (board.isGenerated() ? STARTED : 0));
+            out.putByte(board.getPlacement().ordinal());
+            out.putLong(board.getSeed());
+
+            // mines
+            MineOracle oracle = board.getOracle();
+            long[] mines = board.mineData();
+            if(oracle != null) {
+                out.putByte(MINES_HASHED);
+                oracle.write(out);
+            }
+            else if(mines != null) {
+                out.putByte(MINES_BITSET);
+                for(long word : mines) {
+                    out.putLong(word);
+                }
+            }
+            else {
+                out.putByte(MINES_NONE);
+            }
+
+            // spaces, as runs of the same piece
+            byte[] cells = board.cellData();
+            int i = 0;
+            int reported = 0;
+            while(i < cells.length) {
+                byte id = cells[i];
+                int start = i;
+                while(i < cells.length && cells[i] == id) {
+                    i++;
+                }
+                out.putVarInt(i - start);
+                out.putByte(id);
+
+                if(i - reported >= PROGRESS_STEP) {
+                    progress.update(i, cells.length);
+                    reported = i;
+                }
+            }
+
+            out.flush();
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Reads a board from a file
+     * @param path      File to read
+     * @param progress  Told how many spaces are read
+     * @return  the board
+     * @throws IOException  if the file cannot be read or is not valid
+     */
+    public static MineSweeperBoard read(Path path, Progress progress) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+
+            // header
+            if(in.getInt() != MAGIC) {
+                throw new IOException("Not a MineSweeper save");
+            }
+            int version = in.getShort();
+            if(version < 1 || version > VERSION) {
+                throw new IOException("Unsupported save version " + version);
+            }
+            int width = in.getInt();
+            int height = in.getInt();
+            if(width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+                throw new IOException("Invalid board size " + width + "x" + height);
+            }
+            int mineCount = in.getInt();
+            int flagCount = in.getInt();
+            if(version >= 2) {
+                // revealed, counted again from the spaces
+                in.getInt();
+            }
+            int cheatsAllowed = in.getInt();
+            int cheats = in.getInt();
+            int status = in.getByte();
+            int placement = in.getByte();
+            if(placement < 0 || placement >= PLACEMENTS.length) {
+                throw new IOException("Unknown mine placement " + placement);
+            }
+            long seed = in.getLong();
+
+            MineSweeperBoard board = new MineSweeperBoard(width, height, mineCount, cheatsAllowed);
+            board.setPlacement(PLACEMENTS[placement]);
+
+            // mines
+            int spaces = width * height;
+            long[] mines = null;
+            MineOracle oracle = null;
+            int storage = in.getByte();
+            switch(storage) {
+                case MINES_NONE:
+                    break;
+                case MINES_BITSET:
+                    mines = new long[(spaces + 63) >>> 6];
+                    for(int i = 0; i < mines.length; i++) {
+                        mines[i] = in.getLong();
+                    }
+                    break;
+                case MINES_HASHED:
+                    oracle = MineOracle.read(in, width, height);
+                    break;
+                default:
+                    throw new IOException("Unknown mine storage " + storage);
+            }
+
+            // spaces
+            byte[] cells = new byte[spaces];
+            int i = 0;
+            int reported = 0;
+            while(i < spaces) {
+                int run = in.getVarInt();
+                int id = in.getByte();
+                if(run <= 0 || run > spaces - i || id > PIECE_COUNT) {
+                    throw new IOException("Invalid space data at " + i);
+                }
+                for(int end = i + run; i < end; i++) {
+                    cells[i] = (byte) id;
+                }
+
+                if(i - reported >= PROGRESS_STEP) {
+                    progress.update(i, spaces);
+                    reported = i;
+                }
+            }
+
+            board.restore(cells, mines, oracle, flagCount, cheats, (status & GAME_OVER) != 0,
+                    (status & VICTORY) != 0, (status & STARTED) != 0, seed);
+            return board;
+        }
+    }
+
+
+    /**
+     * Receives the progress of reading or writing a save
+     */
+    interface Progress {
+        /** Progress that is not reported anywhere */
+        Progress NONE = (done, total) -> {};
+
+        /**
+         * Called every so often while a save is read or written
+         * @param done   Spaces read or written so far
+         * @param total  Spaces on the board
+         * @throws IOException  to stop, such as when canceled
+         */
+        void update(long done, long total) throws IOException;
+    }
+
+
+    /* Buffers */
+
+    /**
+     * Buffer collecting values to write to a channel
+     */
+    static class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        // updated with everything written, if not null
+        private final Checksum checksum;
+
+        public Output(WritableByteChannel channel) {
+            this(channel, null);
+        }
+
+        /**
+         * Creates an output that also checksums the bytes written
+         * @param channel   Channel to write to
+         * @param checksum  Updated with each byte as it is written
+         */
+        public Output(WritableByteChannel channel, Checksum checksum) {
+            this.channel = channel;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Makes room for a number of bytes, writing the buffer if needed
+         * @param bytes  Bytes needed
+         */
+        private void ensure(int bytes) throws IOException {
+            if(buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes everything in the buffer to the channel
+         */
+        public void flush() throws IOException {
+            buffer.flip();
+            if(checksum != null) {
+                checksum.update(buffer.array(), 0, buffer.limit());
+            }
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        public void putShort(int value) throws IOException {
+            ensure(2);
+            buffer.putShort((short) value);
+        }
+
+        public void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        public void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Writes the remaining bytes of a buffer
+         * @param bytes  Bytes to write
+         */
+        public void put(ByteBuffer bytes) throws IOException {
+            while(bytes.hasRemaining()) {
+                ensure(Math.min(bytes.remaining(), BUFFER_SIZE));
+                int end = bytes.limit();
+                bytes.limit(bytes.position() + Math.min(bytes.remaining(), buffer.remaining()));
+                buffer.put(bytes);
+                bytes.limit(end);
+            }
+        }
+
+        /**
+         * Writes a positive int using 7 bits per byte, so small values take
+         * a single byte
+         * @param value  Value to write
+         */
+        public void putVarInt(int value) throws IOException {
+            ensure(5);
+            while((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+    }
+
+    /**
+     * Buffer reading values from a channel
+     */
+    static class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        public Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /**
+         * Makes sure a number of bytes are in the buffer, reading more if needed
+         * @param bytes  Bytes needed
+         * @throws EOFException  if the file ends first
+         */
+        private void ensure(int bytes) throws IOException {
+            if(buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while(buffer.position() < bytes) {
+                if(channel.read(buffer) < 0) {
+                    throw new EOFException("Save ended early");
+                }
+            }
+            buffer.flip();
+        }
+
+        public int getByte() throws IOException {
+            ensure(1);
+            return buffer.get() & 0xFF;
+        }
+
+        public int getShort() throws IOException {
+            ensure(2);
+            return buffer.getShort();
+        }
+
+        public int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        public long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        /**
+         * Reads an int written by Output.putVarInt
+         * @return  the value
+         */
+        public int getVarInt() throws IOException {
+            int value = 0;
+            for(int shift = 0; shift < 32; shift += 7) {
+                int b = getByte();
+                value |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint");
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package knightminer.minesweeper;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summaries of the saves in a directory, so they can be listed without loading
+ * any boards.
+ * <p>
+ * Both save formats start with the same header, so a save is summarized by
+ * reading its first few bytes. Summaries are kept in an index file next to the
+ * saves, and each save written by the game appends its summary to the index.
+ * <p>
+ * Listing the directory and checking each save takes far longer than reading
+ * the index, so the index also holds the modification time of the directory.
+ * While that is unchanged no saves were added, removed, or renamed, and the
+ * index is used as is. Otherwise the directory is listed, reusing summaries of
+ * saves with the same size and modification time, so only saves changed
+ * outside the game are read. The index is rewritten once most of its records
+ * are outdated.
+ * <p>
+ * The index only caches what the saves hold, so a missing or damaged index is
+ * rebuilt from the headers.
+ *
+ * @author  KnightMiner
+ */
+public class SaveIndex {
+
+    /** Name of the index file in a save directory */
+    public static final String FILE_NAME = "saves.idx";
+
+    // "MSWI" in ASCII
+    private static final int MAGIC = 0x4D535749;
+    private static final int VERSION = 1;
+    // magic, version, and directory time
+    private static final int INDEX_HEADER = 14;
+    private static final int STAMP_OFFSET = 6;
+
+    // directory times this close to the listing may change again within the
+    // same clock tick, so they are not trusted
+    private static final long RACY_MILLIS = 2000;
+
+    // longest save header, the fields read by readEntry
+    private static final int HEADER_BYTES = 48;
+
+    // outdated records allowed before the index is rewritten
+    private static final int COMPACT_SLACK = 64;
+
+    // stamp for append that leaves the directory time as it is
+    private static final long KEEP_STAMP = -1;
+
+    private static final String EXTENSION = ".bin";
+
+    /** Sorts summaries with the most recent save first */
+    public static final Comparator<Entry> NEWEST_FIRST = Comparator.comparingLong(Entry::getModified).reversed();
+
+    private SaveIndex() {}
+
+    /**
+     * Lists the saves in a directory, most recent first
+     * @param directory  Directory holding the saves
+     * @return  a summary of each save
+     * @throws IOException  if the directory cannot be listed
+     */
+    public static synchronized List<Entry> list(Path directory) throws IOException {
+        Path indexPath = directory.resolve(FILE_NAME);
+        Index index = readIndex(indexPath);
+
+        // if no saves were added or removed, the index is current
+        long listed = System.currentTimeMillis();
+        long stamp = Files.getLastModifiedTime(directory).toMillis();
+        if(index.records >= 0 && index.stamp == stamp) {
+            List<Entry> entries = new ArrayList<>(index.entries.values());
+            entries.sort(NEWEST_FIRST);
+            return entries;
+        }
+        if(listed - stamp < RACY_MILLIS) {
+            stamp = 0;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        List<Entry> changed = new ArrayList<>();
+        try(DirectoryStream<Path> saves = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for(Path save : saves) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(save, BasicFileAttributes.class);
+                }
+                catch(NoSuchFileException e) {
+                    // deleted while listing
+                    continue;
+                }
+                if(!attributes.isRegularFile()) {
+                    continue;
+                }
+
+                String name = nameOf(save);
+                Entry entry = index.entries.get(name);
+                if(entry == null || !entry.matches(attributes)) {
+                    entry = readEntry(save, name, attributes);
+                    changed.add(entry);
+                }
+                entries.add(entry);
+            }
+        }
+
+        // the index only speeds up listing, so failing to update it is not an error
+        try {
+            if(index.records < 0 || index.records + changed.size() > 2 * entries.size() + COMPACT_SLACK) {
+                rewrite(indexPath, entries, stamp);
+            }
+            else {
+                append(indexPath, changed, stamp);
+            }
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+        }
+
+        entries.sort(NEWEST_FIRST);
+        return entries;
+    }
+
+    /**
+     * Gets the time the directory of a save last changed, to pass to update
+     * once the save is written
+     * @param save  Save about to be written
+     * @return  the directory time, or KEEP_STAMP if it cannot be read
+     */
+    public static long directoryTime(Path save) {
+        try {
+            return Files.getLastModifiedTime(save.toAbsolutePath().getParent()).toMillis();
+        }
+        catch(IOException e) {
+            return KEEP_STAMP;
+        }
+    }
+
+    /**
+     * Adds a save that was just written to the index in its directory
+     * @param save    Save file
+     * @param board   Board written to the save
+     * @param before  Directory time from before the save was written
+     */
+    public static synchronized void update(Path save, MineSweeperBoard board, long before) {
+        try {
+            Path absolute = save.toAbsolutePath();
+            BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+            add(absolute, new Entry(nameOf(absolute), attributes, board), before);
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds a save that was just written to the index in its directory, reading
+     * the summary from its header. Used for boards still being played, which
+     * may have changed since the save was written
+     * @param save    Save file
+     * @param before  Directory time from before the save was written
+     */
+    public static synchronized void update(Path save, long before) {
+        try {
+            Path absolute = save.toAbsolutePath();
+            BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+            add(absolute, readEntry(absolute, nameOf(absolute), attributes), before);
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds the summary of a save just written. Writing it changed the
+     * directory time, so if the index was current before then the save was
+     * the only change and the index is current for the new time
+     * @param save    Save file
+     * @param entry   Summary of the save
+     * @param before  Directory time from before the save was written
+     */
+    private static void add(Path save, Entry entry, long before) throws IOException {
+        Path indexPath = save.resolveSibling(FILE_NAME);
+        long stamp = KEEP_STAMP;
+        if(before != KEEP_STAMP && before == readStamp(indexPath)) {
+            stamp = Files.getLastModifiedTime(save.getParent()).toMillis();
+        }
+        append(indexPath, Collections.singletonList(entry), stamp);
+    }
+
+    /**
+     * Gets the name of a save, as used by the load and save dialogs
+     * @param save  Save file
+     * @return  the file name without the extension
+     */
+    private static String nameOf(Path save) {
+        String name = save.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+
+    /* Save headers */
+
+    /**
+     * Summarizes a save from its header
+     * @param save        Save file
+     * @param name        Name of the save
+     * @param attributes  Size and time of the save
+     * @return  the summary, with no details if the save is in the old format
+     *          or cannot be read
+     */
+    private static Entry readEntry(Path save, String name, BasicFileAttributes attributes) {
+        Entry entry = new Entry(name, attributes.size(), attributes.lastModifiedTime().toMillis());
+        try(FileChannel channel = FileChannel.open(save, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while(header.hasRemaining() && channel.read(header) >= 0) {}
+            header.flip();
+
+            int magic = header.getInt();
+            int version = header.getShort();
+            boolean hasRevealed;
+            if(magic == MappedMineSweeperBoard.MAGIC) {
+                hasRevealed = true;
+            }
+            else if(magic == SaveFormat.MAGIC) {
+                hasRevealed = version >= 2;
+            }
+            // serialized boards have to be loaded
+            else {
+                return entry;
+            }
+
+            int width = header.getInt();
+            int height = header.getInt();
+            int mineCount = header.getInt();
+            int flagCount = header.getInt();
+            int revealed = hasRevealed ? header.getInt() : Entry.UNKNOWN;
+            header.getInt(); // cheats allowed
+            header.getInt(); // cheats
+            int status = header.get();
+            header.get(); // placement
+            long seed = header.getLong();
+            return new Entry(name, entry.size, entry.modified, width, height, mineCount, flagCount,
+                    revealed, status, seed);
+        }
+        catch(IOException|BufferUnderflowException e) {
+            return entry;
+        }
+    }
+
+
+    /* Index file */
+
+    /**
+     * Contents of an index file
+     */
+    private static class Index {
+        // latest summary of each save by name
+        final Map<String, Entry> entries = new HashMap<>();
+        // records read, or -1 if the index is missing or damaged and should be rewritten
+        int records = -1;
+        // directory time when the index was last checked against it
+        long stamp;
+    }
+
+    /**
+     * Reads the summaries in an index, later ones replacing earlier ones of
+     * the same save
+     * @param path  Index file
+     * @return  the summaries read
+     */
+    private static Index readIndex(Path path) {
+        Index index = new Index();
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        }
+        catch(IOException e) {
+            return index;
+        }
+
+        try {
+            if(buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                return index;
+            }
+            long stamp = buffer.getLong();
+            int records = 0;
+            while(buffer.hasRemaining()) {
+                int length = buffer.getInt();
+                if(length <= 0 || length > buffer.remaining()) {
+                    // cut off by a crash, later records would be lost after it
+                    return index;
+                }
+                int end = buffer.position() + length;
+                Entry entry = Entry.read(buffer);
+                buffer.position(end);
+                index.entries.put(entry.name, entry);
+                records++;
+            }
+            index.records = records;
+            index.stamp = stamp;
+        }
+        catch(BufferUnderflowException|IllegalArgumentException e) {
+            index.records = -1;
+        }
+        return index;
+    }
+
+    /**
+     * Adds summaries to the end of an index, creating it if needed
+     * @param path     Index file
+     * @param entries  Summaries to add
+     * @param stamp    Directory time the index is current for, or KEEP_STAMP
+     */
+    private static void append(Path path, List<Entry> entries, long stamp) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = encode(entries, channel.size() == 0);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        // positional writes ignore append mode on some systems, so use a second channel
+        if(stamp != KEEP_STAMP) {
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                writeStamp(channel, stamp);
+            }
+        }
+    }
+
+    /**
+     * Replaces an index with one holding only the given summaries. The index
+     * is written in place, as adding a file would change the directory time.
+     * The directory time is written last, so if this is cut off the index is
+     * checked against the directory next time
+     * @param path     Index file
+     * @param entries  Summaries to keep
+     * @param stamp    Directory time the index is current for
+     */
+    private static void rewrite(Path path, List<Entry> entries, long stamp) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = encode(entries, true);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            writeStamp(channel, stamp);
+        }
+    }
+
+    /**
+     * Reads the directory time an index is current for, without reading the
+     * summaries
+     * @param path  Index file
+     * @return  the directory time, or KEEP_STAMP if the index is missing
+     */
+    private static long readStamp(Path path) {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+            while(header.hasRemaining() && channel.read(header) >= 0) {}
+            if(header.hasRemaining() || header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+                return KEEP_STAMP;
+            }
+            return header.getLong(STAMP_OFFSET);
+        }
+        catch(IOException e) {
+            return KEEP_STAMP;
+        }
+    }
+
+    /**
+     * Sets the directory time the index is current for
+     * @param channel  Channel to the index
+     * @param stamp    Directory time
+     */
+    private static void writeStamp(FileChannel channel, long stamp) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8).putLong(0, stamp);
+        while(buffer.hasRemaining()) {
+            channel.write(buffer, STAMP_OFFSET + buffer.position());
+        }
+    }
+
+    /**
+     * Encodes summaries as index records
+     * @param entries  Summaries to encode
+     * @param header   If true, starts with the index header, with no directory time
+     * @return  a buffer ready to write
+     */
+    private static ByteBuffer encode(List<Entry> entries, boolean header) {
+        int size = header ? INDEX_HEADER : 0;
+        for(Entry entry : entries) {
+            size += 4 + entry.recordSize();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        if(header) {
+            buffer.putInt(MAGIC);
+            buffer.putShort((short) VERSION);
+            buffer.putLong(0);
+        }
+        for(Entry entry : entries) {
+            buffer.putInt(entry.recordSize());
+            entry.write(buffer);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+
+    /**
+     * Summary of a single save
+     */
+    public static class Entry {
+        /** Value of counts that the save does not hold */
+        public static final int UNKNOWN = -1;
+
+        private final String name;
+        private final byte[] nameBytes;
+        private final long size, modified;
+        private final int width, height, mineCount, flagCount, revealed;
+        private final int status;
+        private final long seed;
+
+        private Entry(String name, long size, long modified, int width, int height, int mineCount,
+                int flagCount, int revealed, int status, long seed) {
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.size = size;
+            this.modified = modified;
+            this.width = width;
+            this.height = height;
+            this.mineCount = mineCount;
+            this.flagCount = flagCount;
+            this.revealed = revealed;
+            this.status = status;
+            this.seed = seed;
+        }
+
+        /**
+         * Creates a summary with no details, for saves without a header
+         */
+        private Entry(String name, long size, long modified) {
+            this(name, size, modified, 0, 0, 0, 0, UNKNOWN, 0, 0);
+        }
+
+        /**
+         * Creates a summary of a board that was just saved
+         */
+        private Entry(String name, BasicFileAttributes attributes, MineSweeperBoard board) {
+            this(name, attributes.size(), attributes.lastModifiedTime().toMillis(), board.getWidth(),
+                    board.getHeight(), board.getMineCount(), board.getFlagCount(), board.getRevealed(),
+                    (board.gameOver() ? SaveFormat.GAME_OVER : 0) | (board.hasWon() ? SaveFormat.VICTORY : 0)
+                            | (board.isGenerated() ? SaveFormat.STARTED : 0),
+                    board.getSeed());
+        }
+
+        /**
+         * Checks if this summary is still current for a save
+         * @param attributes  Current size and time of the save
+         * @return  true if the save has not changed
+         */
+        private boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+        }
+
+        private int recordSize() {
+            return 2 + nameBytes.length + 8 + 8 + 4 * 5 + 1 + 8;
+        }
+
+        private void write(ByteBuffer buffer) {
+            buffer.putShort((short) nameBytes.length);
+            buffer.put(nameBytes);
+            buffer.putLong(size);
+            buffer.putLong(modified);
+            buffer.putInt(width);
+            buffer.putInt(height);
+            buffer.putInt(mineCount);
+            buffer.putInt(flagCount);
+            buffer.putInt(revealed);
+            buffer.put((byte) status);
+            buffer.putLong(seed);
+        }
+
+        private static Entry read(ByteBuffer buffer) {
+            byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(nameBytes);
+            return new Entry(new String(nameBytes, StandardCharsets.UTF_8), buffer.getLong(), buffer.getLong(),
+                    buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                    buffer.get(), buffer.getLong());
+        }
+
+        /**
+         * Gets the name of the save, as used by the load dialog
+         * @return  the save name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the time the save was written
+         * @return  the time in milliseconds since the epoch
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Checks if the header of the save could be read. Saves in the old
+         * format only have a name and time
+         * @return  true if the other details are known
+         */
+        public boolean hasDetails() {
+            return width > 0;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Gets the number of mines left, as shown while playing
+         * @return  the mines minus the flags placed
+         */
+        public int getMinesLeft() {
+            return mineCount - flagCount;
+        }
+
+        /**
+         * Gets how much of the board has been cleared
+         * @return  the fraction of safe spaces revealed, or UNKNOWN
+         */
+        public double getProgress() {
+            if(revealed == UNKNOWN || !hasDetails()) {
+                return UNKNOWN;
+            }
+            long safe = (long) width * height - mineCount;
+            return safe > 0 ? (double) revealed / safe : 1;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Checks if the first click was made
+         * @return  true if the game started
+         */
+        public boolean isStarted() {
+            return (status & SaveFormat.STARTED) != 0;
+        }
+
+        public boolean gameOver() {
+            return (status & SaveFormat.GAME_OVER) != 0;
+        }
+
+        public boolean hasWon() {
+            return (status & SaveFormat.VICTORY) != 0;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package knightminer.minesweeper;
+
+import java.awt.Component;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Saves or loads a game on a background thread, so the window keeps
+ * responding while large boards are read or written. Progress is shown in a
+ * {@link ProgressMonitor}, which pops up if the work takes a while.
+ * <p>
+ * Canceling stops the worker at its next progress update. The worker is not
+ * interrupted, as that would close the file of a board played from a tiled
+ * save. Saves are written to a temporary file and renamed once complete, so a
+ * canceled or failed save leaves any previous save as it was. Errors are shown
+ * in a dialog.
+ *
+ * @author  KnightMiner
+ */
+class SaveWorker extends SwingWorker<MineSweeperBoard, Void> implements SaveFormat.Progress {
+
+    // how often to check if the monitor was canceled, in milliseconds
+    private static final int CANCEL_CHECK = 100;
+
+    private final Component parent;
+    private final String filename;
+    private final Path path;
+
+    // board to save, or null when loading. A copy, unless played from a tiled
+    // save which only has its changes taken
+    private final MineSweeperBoard snapshot;
+
+    private final ProgressMonitor monitor;
+    private final Timer cancelCheck;
+
+    private SaveWorker(Component parent, String filename, MineSweeperBoard snapshot) {
+        this.parent = parent;
+        this.filename = filename;
+        this.path = Paths.get(filename + ".bin");
+        this.snapshot = snapshot;
+
+        monitor = new ProgressMonitor(parent, (snapshot == null ? "Loading " : "Saving ") + filename,
+                null, 0, 100);
+        cancelCheck = new Timer(CANCEL_CHECK, event -> {
+            if(monitor.isCanceled()) {
+                cancel(false);
+            }
+        });
+        addPropertyChangeListener(event -> {
+            if("progress".equals(event.getPropertyName())) {
+                monitor.setProgress(getProgress());
+            }
+        });
+    }
+
+    /**
+     * Saves a game in the background. The board is copied right away, so the
+     * save holds the board as it was when requested while play continues.
+     * <p>
+     * Boards played from a tiled save are too large to copy, so only the
+     * tiles changed are taken. Those are written to the file in the
+     * background, and saving elsewhere then copies the file. Moves made while
+     * saving elsewhere may be in the copy if the autosave took them first
+     * @param parent    Window to show progress and errors over
+     * @param board     Board to save
+     * @param filename  Name of the save, without the extension
+     */
+    public static void save(Component parent, MineSweeperBoard board, String filename) {
+        if(board instanceof MappedMineSweeperBoard) {
+            ((MappedMineSweeperBoard) board).takeChanges();
+            new SaveWorker(parent, filename, board).start();
+        }
+        else {
+            new SaveWorker(parent, filename, board.copy()).start();
+        }
+    }
+
+    /**
+     * Loads a game in the background, starting it once loaded
+     * @param parent    Window to show progress and errors over
+     * @param filename  Name of the save, without the extension
+     */
+    public static void load(Component parent, String filename) {
+        new SaveWorker(parent, filename, null).start();
+    }
+
+    /**
+     * Starts the worker and watches for the monitor being canceled
+     */
+    private void start() {
+        cancelCheck.start();
+        execute();
+    }
+
+    @Override
+    protected MineSweeperBoard doInBackground() throws IOException {
+        if(snapshot != null) {
+            long before = SaveIndex.directoryTime(path);
+            MineSweeperBoard.writeSave(snapshot, path, this);
+            // the board may have changed since, so summarize what was written
+            if(snapshot instanceof MappedMineSweeperBoard) {
+                SaveIndex.update(path, before);
+            }
+            else {
+                SaveIndex.update(path, snapshot, before);
+            }
+            return snapshot;
+        }
+        return MineSweeperBoard.readSave(path, this);
+    }
+
+    @Override
+    public void update(long done, long total) throws IOException {
+        if(isCancelled()) {
+            throw new InterruptedIOException("Canceled");
+        }
+        setProgress((int) (done * 100 / total));
+    }
+
+    @Override
+    protected void done() {
+        cancelCheck.stop();
+        monitor.close();
+
+        // nothing was changed
+        if(isCancelled()) {
+            return;
+        }
+
+        try {
+            MineSweeperBoard board = get();
+            if(snapshot == null) {
+                MineSweeper.startGame(board);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            e.getCause().printStackTrace();
+            String action = snapshot == null ? "Load" : "Save";
+            JOptionPane.showMessageDialog(parent,
+                    "Error " + (snapshot == null ? "reading" : "writing") + " save game " + filename
+                            + ": " + e.getCause().getMessage(),
+                    "MineSweeper - " + action + " game",
+                    JOptionPane.ERROR_MESSAGE
+                    );
+        }
+    }
+}
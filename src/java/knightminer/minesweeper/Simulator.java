@@ -0,0 +1,440 @@
+package knightminer.minesweeper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import knightminer.minesweeper.MineSweeper.Difficulty;
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+
+/**
+ * Plays many games without a window, to measure how hard a board size is for
+ * a strategy.
+ * <p>
+ * Each worker thread plays on its own board with its own strategy, and keeps
+ * its own counts which are added together once all workers finish, so the
+ * workers share nothing while playing. Game n always uses the same seeds,
+ * derived from the master seed, and is always played by the same worker for
+ * a given thread count. Every count in the report except the time taken
+ * therefore comes out the same for the same master seed, no matter how many
+ * threads are used.
+ * <p>
+ * No Swing or AWT classes are loaded, so this can be run headless:
+ * <pre>java knightminer.minesweeper.Simulator [easy|normal|hard|WxHxMINES] [games] [seed] [logic|probability]</pre>
+ *
+ * @author  KnightMiner
+ */
+public class Simulator {
+
+    // added to the master seed for each game, spreads out nearby seeds
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    private final int width, height, mineCount;
+    private final Function<MineSweeperBoard, Strategy> strategy;
+
+    /**
+     * Creates a simulator for a board size
+     * @param width      Width of the board
+     * @param height     Height of the board
+     * @param mineCount  Total mines
+     * @param strategy   Creates the strategy for each worker from its board
+     */
+    public Simulator(int width, int height, int mineCount, Function<MineSweeperBoard, Strategy> strategy) {
+        this.width = width;
+        this.height = height;
+        this.mineCount = mineCount;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Plays games across all cores
+     * @param games       Number of games to play
+     * @param masterSeed  Seed all games are derived from
+     * @return  the counts of all games
+     */
+    public Report run(int games, long masterSeed) {
+        return run(games, masterSeed, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Plays games
+     * @param games       Number of games to play
+     * @param masterSeed  Seed all games are derived from
+     * @param threads     Number of workers
+     * @return  the counts of all games
+     */
+    public Report run(int games, long masterSeed, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<Report>> workers = new ArrayList<>(threads);
+            for(int worker = 0; worker < threads; worker++) {
+                int first = worker;
+                workers.add(executor.submit(() -> play(first, threads, games, masterSeed)));
+            }
+
+            Report total = new Report();
+            for(Future<Report> worker : workers) {
+                total.add(worker.get());
+            }
+            total.nanos = System.nanoTime() - start;
+            return total;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating", e);
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays every game assigned to one worker
+     * @param first  First game to play
+     * @param step   Games between each game played
+     * @param games  Total games
+     * @param masterSeed  Seed all games are derived from
+     * @return  the counts of this worker's games
+     */
+    private Report play(int first, int step, int games, long masterSeed) {
+        MineSweeperBoard board = new MineSweeperBoard(width, height, mineCount, 0);
+        board.setJournalCapacity(0);
+        board.setParallelReveal(false);
+
+        Report report = new Report();
+        Random random = new Random();
+        try(Strategy player = strategy.apply(board)) {
+            for(int game = first; game < games; game += step) {
+                long seed = MineOracle.mix(masterSeed + game * SEED_STEP);
+                random.setSeed(MineOracle.mix(seed));
+                playGame(board, player, seed, random, report);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Plays a single game until won, lost, or the strategy stops changing
+     * the board
+     */
+    private static void playGame(MineSweeperBoard board, Strategy player, long seed, Random random,
+            Report report) {
+        board.newGame();
+
+        // no move should be needed more than twice per space
+        int moves = board.getWidth() * board.getHeight() * 2;
+        while(!board.gameOver() && moves-- > 0) {
+            Move move = player.nextMove(random);
+            if(!board.isGenerated()) {
+                board.startGame(seed, move.index);
+            }
+            board.handleClick(move.index, move.action);
+
+            if(move.action == ClickAction.DEFAULT) {
+                report.clicks++;
+            }
+            if(move.guess) {
+                report.guesses++;
+            }
+        }
+
+        report.games++;
+        if(board.hasWon()) {
+            report.wins++;
+        }
+    }
+
+
+    /* Strategies */
+
+    /**
+     * Decides the moves of one board, one game after another. Each worker
+     * creates its own, so strategies may keep state about the board
+     */
+    public interface Strategy extends AutoCloseable {
+        /**
+         * Picks the next move. For the first move of a game, the mines are
+         * placed around the space picked
+         * @param random  Random for guessing, seeded for each game so the
+         *                results reproduce
+         * @return  the move
+         */
+        Move nextMove(Random random);
+
+        /**
+         * Called once the worker has played all its games
+         */
+        @Override
+        default void close() {}
+    }
+
+    /**
+     * A move picked by a strategy
+     */
+    public static class Move {
+        private final int index;
+        private final ClickAction action;
+        private final boolean guess;
+
+        /**
+         * Creates a move
+         * @param index   Index of the space
+         * @param action  Action to click with
+         * @param guess   true if the strategy could not be sure of the move
+         */
+        public Move(int index, ClickAction action, boolean guess) {
+            this.index = index;
+            this.action = action;
+            this.guess = guess;
+        }
+
+        /**
+         * Opens a space known to be safe
+         * @param index  Index of the space
+         * @return  the move
+         */
+        public static Move open(int index) {
+            return new Move(index, ClickAction.DEFAULT, false);
+        }
+
+        /**
+         * Opens a space that may be a mine
+         * @param index  Index of the space
+         * @return  the move
+         */
+        public static Move guess(int index) {
+            return new Move(index, ClickAction.DEFAULT, true);
+        }
+    }
+
+    /**
+     * Opens the middle of the board first, then every space {@link Solver}
+     * finds safe, and guesses a random hidden space when stuck
+     */
+    public static class LogicStrategy implements Strategy {
+        protected final MineSweeperBoard board;
+        private final Solver solver;
+
+        /**
+         * Creates a strategy for a board
+         * @param board  Board to play
+         */
+        public LogicStrategy(MineSweeperBoard board) {
+            this.board = board;
+            this.solver = new Solver(board);
+        }
+
+        @Override
+        public Move nextMove(Random random) {
+            if(!board.isGenerated()) {
+                return Move.open(board.getIndex(board.getWidth() / 2, board.getHeight() / 2));
+            }
+
+            solver.solve();
+            int safe = solver.pollSafe();
+            if(safe >= 0) {
+                return Move.open(safe);
+            }
+            return guess(random);
+        }
+
+        /**
+         * Picks a space to open when the solver finds nothing certain
+         * @param random  Random for guessing
+         * @return  the move
+         */
+        protected Move guess(Random random) {
+            int spaces = board.getWidth() * board.getHeight();
+            int count = 0;
+            for(int index = 0; index < spaces; index++) {
+                if(isCandidate(index)) {
+                    count++;
+                }
+            }
+
+            int pick = random.nextInt(count);
+            for(int index = 0; ; index++) {
+                if(isCandidate(index) && pick-- == 0) {
+                    return Move.guess(index);
+                }
+            }
+        }
+
+        /**
+         * Checks if a space is hidden and not known to be a mine
+         */
+        private boolean isCandidate(int index) {
+            Piece piece = board.getCell(index);
+            return (piece == null || piece.isMark()) && !solver.isKnownMine(index);
+        }
+
+        @Override
+        public void close() {
+            solver.close();
+        }
+    }
+
+    /**
+     * Same as {@link LogicStrategy}, but guesses the space least likely to be
+     * a mine from {@link ProbabilitySolver}, which also finds safe spaces
+     * needing more than two numbers. Components are counted on a pool of its
+     * own so workers do not compete for the common pool
+     */
+    public static class ProbabilityStrategy extends LogicStrategy {
+        // long enough that only components too large to count are estimated,
+        // as running out of time would make results depend on the machine
+        private static final long BUDGET = 60000;
+
+        private final ForkJoinPool pool = new ForkJoinPool(1);
+        private final ProbabilitySolver probabilities = new ProbabilitySolver(pool, BUDGET);
+
+        /**
+         * Creates a strategy for a board
+         * @param board  Board to play
+         */
+        public ProbabilityStrategy(MineSweeperBoard board) {
+            super(board);
+        }
+
+        @Override
+        protected Move guess(Random random) {
+            ProbabilitySolver.Result result = probabilities.solve(board);
+            int safest = result.getSafest();
+            if(result.isExact() && result.getProbability(safest) == 0) {
+                return Move.open(safest);
+            }
+            return Move.guess(safest);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            pool.shutdown();
+        }
+    }
+
+
+    /* Results */
+
+    /**
+     * Counts from a set of games
+     */
+    public static class Report {
+        private long games, wins, clicks, guesses;
+        private long nanos;
+
+        /**
+         * Adds the counts of another report
+         * @param other  Report to add
+         */
+        private void add(Report other) {
+            games += other.games;
+            wins += other.wins;
+            clicks += other.clicks;
+            guesses += other.guesses;
+        }
+
+        /**
+         * Gets the number of games played
+         * @return  the number of games
+         */
+        public long getGames() {
+            return games;
+        }
+
+        /**
+         * Gets the fraction of games won
+         * @return  the win rate from 0 to 1
+         */
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        /**
+         * Gets the average spaces opened per game, including guesses
+         * @return  the clicks per game
+         */
+        public double getClicksPerGame() {
+            return games == 0 ? 0 : (double) clicks / games;
+        }
+
+        /**
+         * Gets the average guesses per game, including a final losing guess
+         * @return  the guesses per game
+         */
+        public double getGuessesPerGame() {
+            return games == 0 ? 0 : (double) guesses / games;
+        }
+
+        /**
+         * Gets the games played each second, across all workers
+         * @return  the throughput
+         */
+        public double getGamesPerSecond() {
+            return nanos == 0 ? 0 : games * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("games=%d, win rate=%.2f%%, clicks/game=%.2f, guesses/game=%.3f, games/s=%.0f",
+                    games, getWinRate() * 100, getClicksPerGame(), getGuessesPerGame(), getGamesPerSecond());
+        }
+    }
+
+
+    /* Command line */
+
+    /**
+     * Runs a simulation from the command line
+     * @param args  Board size as a difficulty or WxHxMINES, games, master
+     *              seed, and strategy, all optional
+     */
+    public static void main(String[] args) {
+        String size = args.length > 0 ? args[0] : "hard";
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        String name = args.length > 3 ? args[3] : "logic";
+
+        int width, height, mineCount;
+        if(size.contains("x")) {
+            String[] parts = size.split("x");
+            width = Integer.parseInt(parts[0]);
+            height = Integer.parseInt(parts[1]);
+            mineCount = Integer.parseInt(parts[2]);
+        }
+        else {
+            MineSweeperBoard board = Difficulty.valueOf(size.toUpperCase()).createBoard();
+            if(board == null) {
+                throw new IllegalArgumentException("Custom boards need a size, such as 30x16x99");
+            }
+            width = board.getWidth();
+            height = board.getHeight();
+            mineCount = board.getMineCount();
+        }
+
+        Function<MineSweeperBoard, Strategy> strategy;
+        switch(name) {
+            case "logic":
+                strategy = LogicStrategy::new;
+                break;
+            case "probability":
+                strategy = ProbabilityStrategy::new;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + name);
+        }
+
+        Report report = new Simulator(width, height, mineCount, strategy).run(games, seed);
+        System.out.println(width + "x" + height + " with " + mineCount + " mines, " + name + " strategy: " + report);
+    }
+}
@@ -0,0 +1,441 @@
+package knightminer.minesweeper;
+
+import java.util.Arrays;
+
+import knightminer.minesweeper.MineSweeperBoard.ClickAction;
+
+/**
+ * Finds spaces that are certainly safe or certainly mines from the numbers and
+ * flags showing on a board, the way a player would without guessing.
+ * <p>
+ * Each revealed number says its hidden neighbors hold the number minus the
+ * flags around it. Two rules are used:
+ * <ul>
+ *   <li>If a number has no mines left, its hidden neighbors are safe. If it
+ *       has as many mines left as hidden neighbors, they are all mines.</li>
+ *   <li>If two nearby numbers share hidden neighbors, and the difference in
+ *       their mines left equals the number of spaces only the first touches,
+ *       those spaces are mines and the spaces only the second touches are
+ *       safe. This includes one number's spaces being a subset of the
+ *       other's.</li>
+ * </ul>
+ * The solver listens to the board and keeps a queue of numbers to check, added
+ * to as spaces around them change or are deduced, so the work after a click
+ * depends on what the click changed rather than the size of the board.
+ * <p>
+ * Flags are trusted, so a wrong flag can lead to wrong deductions. Changes
+ * that remove information, such as undoing or removing a flag, start over from
+ * the whole board. Like replays, only one thread may click the board while it
+ * is solved.
+ *
+ * @author  KnightMiner
+ */
+public class Solver implements MoveListener, AutoCloseable {
+
+    // what is known about each space
+    private static final byte UNKNOWN = 0;
+    private static final byte SAFE = 1;
+    private static final byte MINE = 2;
+
+    private final MineSweeperBoard board;
+    private final int width, height;
+    private final byte[] known;
+
+    // numbers to check, and a bit for each that is already queued
+    private final IntQueue pending = new IntQueue();
+    private final long[] queued;
+
+    // deduced spaces not yet taken by pollSafe() or pollMine()
+    private final IntQueue safe = new IntQueue();
+    private final IntQueue mines = new IntQueue();
+
+    // set when the board lost information, so deductions start over
+    private boolean rebuild = true;
+
+    // hidden neighbors of the two numbers being compared
+    private final int[] hidden = new int[8];
+    private final int[] otherHidden = new int[8];
+    // mines left around the number last passed to collect()
+    private int remaining;
+
+    /**
+     * Creates a solver following a board
+     * @param board  Board to solve
+     */
+    public Solver(MineSweeperBoard board) {
+        this.board = board;
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.known = new byte[width * height];
+        this.queued = new long[(width * height + 63) >>> 6];
+        board.addMoveListener(this);
+    }
+
+    /**
+     * Stops following the board
+     */
+    @Override
+    public void close() {
+        board.removeMoveListener(this);
+    }
+
+    /**
+     * Deduces what it can from the spaces changed since the last call
+     * @return  the number of spaces newly deduced
+     */
+    public int solve() {
+        if(rebuild) {
+            rebuild();
+        }
+
+        int found = 0;
+        while(!pending.isEmpty()) {
+            int index = pending.poll();
+            queued[index >>> 6] &= ~(1L << index);
+            found += check(index);
+        }
+        return found;
+    }
+
+    /**
+     * Checks if a space was deduced to be safe
+     * @param index  Index of the space
+     * @return  true if the space is certainly safe
+     */
+    public boolean isKnownSafe(int index) {
+        return known[index] == SAFE;
+    }
+
+    /**
+     * Checks if a space was deduced to be a mine
+     * @param index  Index of the space
+     * @return  true if the space is certainly a mine
+     */
+    public boolean isKnownMine(int index) {
+        return known[index] == MINE;
+    }
+
+    /**
+     * Takes the next space deduced to be safe that is still hidden
+     * @return  the index of the space, or -1 if there are none
+     */
+    public int pollSafe() {
+        while(!safe.isEmpty()) {
+            int index = safe.poll();
+            if(known[index] == SAFE && isHidden(board.getCell(index))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Takes the next space deduced to be a mine that is not flagged
+     * @return  the index of the space, or -1 if there are none
+     */
+    public int pollMine() {
+        while(!mines.isEmpty()) {
+            int index = mines.poll();
+            if(known[index] == MINE && isHidden(board.getCell(index))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+
+    /* Deductions */
+
+    /**
+     * Forgets all deductions and queues every number on the board
+     */
+    private void rebuild() {
+        rebuild = false;
+        Arrays.fill(known, UNKNOWN);
+        Arrays.fill(queued, 0);
+        pending.clear();
+        safe.clear();
+        mines.clear();
+
+        for(int index = 0; index < known.length; index++) {
+            Piece piece = board.getCell(index);
+            if(piece != null && piece.isNumber()) {
+                enqueue(index);
+            }
+        }
+    }
+
+    /**
+     * Applies the rules to a single number
+     * @param index  Index of the number
+     * @return  the number of spaces deduced
+     */
+    private int check(int index) {
+        Piece piece = board.getCell(index);
+        if(piece == null || !piece.isNumber()) {
+            return 0;
+        }
+
+        int count = collect(index, piece, hidden);
+        int left = remaining;
+        if(count == 0 || left < 0 || left > count) {
+            // nothing hidden, or flags that cannot be right
+            return 0;
+        }
+        if(left == 0) {
+            return markAll(hidden, count, SAFE);
+        }
+        if(left == count) {
+            return markAll(hidden, count, MINE);
+        }
+
+        // numbers up to two spaces away may share hidden neighbors
+        int x = index % width;
+        int y = index / width;
+        for(int j = Math.max(y - 2, 0); j <= Math.min(y + 2, height - 1); j++) {
+            for(int i = Math.max(x - 2, 0); i <= Math.min(x + 2, width - 1); i++) {
+                int other = j * width + i;
+                Piece otherPiece = board.getCell(other);
+                if(other == index || otherPiece == null || !otherPiece.isNumber()) {
+                    continue;
+                }
+
+                int otherCount = collect(other, otherPiece, otherHidden);
+                int otherLeft = remaining;
+                if(otherCount == 0 || otherLeft < 0 || otherLeft > otherCount) {
+                    continue;
+                }
+
+                int found = compare(count, left, otherCount, otherLeft);
+                if(found > 0) {
+                    // its hidden spaces changed, so check the rest later. The
+                    // spaces deduced may all be the other number's, which do
+                    // not queue this one
+                    enqueue(index);
+                    return found;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares the hidden neighbors of two numbers
+     * @param count       Hidden neighbors of the first number, in hidden
+     * @param left        Mines left around the first number
+     * @param otherCount  Hidden neighbors of the second number, in otherHidden
+     * @param otherLeft   Mines left around the second number
+     * @return  the number of spaces deduced
+     */
+    private int compare(int count, int left, int otherCount, int otherLeft) {
+        int shared = 0;
+        for(int a = 0; a < count; a++) {
+            if(contains(otherHidden, otherCount, hidden[a])) {
+                shared++;
+            }
+        }
+        if(shared == 0) {
+            return 0;
+        }
+
+        // the shared spaces hold at most the smaller of the two counts, so if
+        // the first number needs that many mines outside them, they must all
+        // be mines and the other number's own spaces safe. With no spaces of
+        // its own, this is the first number's spaces being a subset
+        int only = count - shared;
+        int otherOnly = otherCount - shared;
+        if(left - otherLeft == only) {
+            return markOnly(hidden, count, otherHidden, otherCount, MINE)
+                    + markOnly(otherHidden, otherCount, hidden, count, SAFE);
+        }
+        if(otherLeft - left == otherOnly) {
+            return markOnly(otherHidden, otherCount, hidden, count, MINE)
+                    + markOnly(hidden, count, otherHidden, otherCount, SAFE);
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the undecided hidden neighbors of a number
+     * @param index   Index of the number
+     * @param number  Number on the space
+     * @param out     Array to fill with the hidden neighbors
+     * @return  the number of hidden neighbors, setting remaining to the mines
+     *          left among them
+     */
+    private int collect(int index, Piece number, int[] out) {
+        int x = index % width;
+        int y = index / width;
+        int count = 0;
+        int found = 0;
+        for(int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+            for(int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                int neighbor = j * width + i;
+                Piece piece = board.getCell(neighbor);
+                if(isHidden(piece)) {
+                    if(known[neighbor] == MINE) {
+                        found++;
+                    }
+                    else if(known[neighbor] == UNKNOWN) {
+                        out[count++] = neighbor;
+                    }
+                }
+                else if(!piece.isNumber()) {
+                    // flags and shown mines
+                    found++;
+                }
+            }
+        }
+        remaining = number.getNumber() - found;
+        return count;
+    }
+
+    /**
+     * Marks spaces as deduced
+     * @return  the number of spaces newly deduced
+     */
+    private int markAll(int[] spaces, int count, byte state) {
+        int found = 0;
+        for(int i = 0; i < count; i++) {
+            found += mark(spaces[i], state);
+        }
+        return found;
+    }
+
+    /**
+     * Marks the spaces in one list that are not in another
+     * @return  the number of spaces newly deduced
+     */
+    private int markOnly(int[] spaces, int count, int[] exclude, int excludeCount, byte state) {
+        int found = 0;
+        for(int i = 0; i < count; i++) {
+            if(!contains(exclude, excludeCount, spaces[i])) {
+                found += mark(spaces[i], state);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Records a deduced space, and queues the numbers around it
+     * @param index  Index of the space
+     * @param state  SAFE or MINE
+     * @return  1 if the space was not yet deduced, 0 otherwise
+     */
+    private int mark(int index, byte state) {
+        if(known[index] != UNKNOWN) {
+            return 0;
+        }
+        known[index] = state;
+        (state == SAFE ? safe : mines).add(index);
+        enqueueAround(index);
+        return 1;
+    }
+
+    private static boolean contains(int[] spaces, int count, int index) {
+        for(int i = 0; i < count; i++) {
+            if(spaces[i] == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a piece leaves the space hidden to the player. Marks only
+     * help the player remember, so they do not count as flags
+     * @param piece  Piece on the space
+     */
+    private static boolean isHidden(Piece piece) {
+        return piece == null || piece.isMark();
+    }
+
+
+    /* Queue */
+
+    /**
+     * Queues a number to be checked, if not already queued
+     * @param index  Index of the number
+     */
+    private void enqueue(int index) {
+        long bit = 1L << index;
+        if((queued[index >>> 6] & bit) == 0) {
+            queued[index >>> 6] |= bit;
+            pending.add(index);
+        }
+    }
+
+    /**
+     * Queues the numbers around a space
+     * @param index  Index of the space
+     */
+    private void enqueueAround(int index) {
+        int x = index % width;
+        int y = index / width;
+        for(int j = Math.max(y - 1, 0); j <= Math.min(y + 1, height - 1); j++) {
+            for(int i = Math.max(x - 1, 0); i <= Math.min(x + 1, width - 1); i++) {
+                int neighbor = j * width + i;
+                Piece piece = board.getCell(neighbor);
+                if(neighbor != index && piece != null && piece.isNumber()) {
+                    enqueue(neighbor);
+                }
+            }
+        }
+    }
+
+
+    /* Board changes */
+
+    @Override
+    public void spaceChanged(int index, Piece old, Piece piece) {
+        if(rebuild) {
+            return;
+        }
+
+        // numbers and flags are only taken back by undoing or removing a
+        // flag, either of which may invalidate deductions
+        if(!isHidden(old)) {
+            rebuild = true;
+            return;
+        }
+
+        // marks change nothing
+        if(isHidden(piece)) {
+            return;
+        }
+
+        // a number where a mine was deduced or a flag on a safe space means
+        // a flag was wrong
+        if(known[index] == (piece.isNumber() ? MINE : SAFE)) {
+            rebuild = true;
+            return;
+        }
+
+        if(piece.isNumber()) {
+            enqueue(index);
+        }
+        enqueueAround(index);
+    }
+
+    @Override
+    public void clicked(int index, ClickAction action) {}
+
+    @Override
+    public void started(int clicked) {}
+
+    @Override
+    public void restarted() {
+        rebuild = true;
+    }
+
+    @Override
+    public void cleared() {
+        rebuild = true;
+    }
+
+    @Override
+    public void undone() {}
+
+    @Override
+    public void redone() {}
+}
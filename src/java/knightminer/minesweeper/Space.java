@@ -2,13 +2,23 @@ package knightminer.minesweeper;
 
 /**
  * Primarily a wrapper for holding two integers, but also useful as it passes
- * some methods from MineSweeperBoard
+ * some methods from MineSweeperBoard. Spaces cannot be changed once created,
+ * so the same object may be shared by everything using that location.
  * 
  * @author  KnightMiner
  */
-public class Space {
+public final class Space {
 
-    private int x, y;
+    /**
+     * Spaces with both values from 0 up to this size are cached by of().
+     * Set using the system property "minesweeper.spacePoolSize"
+     */
+    public static final int POOL_SIZE = Math.max(0, Integer.getInteger("minesweeper.spacePoolSize", 128));
+
+    // cached spaces, created as requested
+    private static final Space[] POOL = new Space[POOL_SIZE * POOL_SIZE];
+
+    private final int x, y;
 
     /**
      * Creates a new space with the specified row and column
@@ -20,6 +30,29 @@ public class Space {
         this.y = y;
     }
 
+    /**
+     * Gets a space with the specified row and column, reusing a cached space
+     * if one exists. Prefer this to the constructor
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  a space with the specified values
+     */
+    public static Space of(int x, int y) {
+        // outside of the pool, just make a new space
+        if(x < 0 || y < 0 || x >= POOL_SIZE || y >= POOL_SIZE) {
+            return new Space(x, y);
+        }
+
+        // if two threads both create the space they are still equal, so no locking
+        int index = y * POOL_SIZE + x;
+        Space space = POOL[index];
+        if(space == null) {
+            space = new Space(x, y);
+            POOL[index] = space;
+        }
+        return space;
+    }
+
     /**
      * Gets the x value
      * @return  The x value
@@ -36,6 +69,52 @@ public class Space {
         return y;
     }
 
+    /**
+     * Packs both values of this space into a single long.
+     * Unlike a board index, this does not depend on the board size
+     * @return  the packed space
+     */
+    public long pack() {
+        return pack(x, y);
+    }
+
+    /**
+     * Packs two values into a single long, with y in the high half
+     * @param x  X value of the space
+     * @param y  Y value of the space
+     * @return  the packed space
+     */
+    public static long pack(int x, int y) {
+        return ((long) y << 32) | (x & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the x value from a packed space
+     * @param packed  Space from pack()
+     * @return  The x value
+     */
+    public static int unpackX(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Gets the y value from a packed space
+     * @param packed  Space from pack()
+     * @return  The y value
+     */
+    public static int unpackY(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * Gets the space from a packed value
+     * @param packed  Space from pack()
+     * @return  the space
+     */
+    public static Space unpack(long packed) {
+        return of(unpackX(packed), unpackY(packed));
+    }
+
     /**
      * Determines if two spaces are equal
      * @param other  Space to compare
@@ -50,6 +129,25 @@ public class Space {
                 && this.y == other.y;
     }
 
+    /**
+     * Determines if this space is equal to another object
+     * @param other  Object to compare
+     * @return  true if the object is a space with the same values
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Space && equals((Space) other);
+    }
+
+    /**
+     * Gets a hash code for the space, equal spaces have the same hash code
+     * @return  the hash code
+     */
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
+    }
+
     /**
      * Creates a string of the current space
      * @return  a string of the current space
@@ -58,4 +156,4 @@ public class Space {
     public String toString() {
         return String.format("(%d,%d)", x, y);
     }
-}
\ No newline at end of file
+}
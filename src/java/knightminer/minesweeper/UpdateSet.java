@@ -0,0 +1,190 @@
+package knightminer.minesweeper;
+
+/**
+ * Set of spaces needing an update by the graphics display, stored as a bitset
+ * of space indexes. Marking a space twice only updates it once, and the
+ * rectangle around all marked spaces is tracked so draining the set only
+ * looks at the part of the board that changed.
+ *
+ * @author  KnightMiner
+ */
+public class UpdateSet {
+
+    // board dimensions
+    private final int width, height;
+
+    // one bit per space, by y * width + x
+    private final long[] bits;
+    private int size;
+
+    // rectangle containing all marked spaces, only valid if not empty
+    private int minX, minY, maxX, maxY;
+
+    // first long that may still contain a marked space
+    private int cursor;
+
+    /**
+     * Creates a new empty set for a board of the specified size
+     * @param width   Width of the board
+     * @param height  Height of the board
+     */
+    public UpdateSet(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.bits = new long[(width * height + 63) >>> 6];
+    }
+
+    /**
+     * Marks a space as needing an update
+     * @param index  Index of the space
+     * @return  true if the space was not already marked
+     */
+    public boolean mark(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        if((bits[word] & bit) != 0) {
+            return false;
+        }
+        bits[word] |= bit;
+
+        // grow the rectangle to fit the space
+        int x = index % width;
+        int y = index / width;
+        if(size == 0) {
+            minX = maxX = x;
+            minY = maxY = y;
+            cursor = word;
+        }
+        else {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            cursor = Math.min(cursor, word);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Marks every space on the board as needing an update
+     */
+    public void markAll() {
+        int spaces = width * height;
+        if(spaces == 0) {
+            return;
+        }
+
+        // fill all the longs, leaving out the bits past the last space
+        for(int i = 0; i < bits.length; i++) {
+            bits[i] = -1L;
+        }
+        if((spaces & 63) != 0) {
+            bits[bits.length - 1] = (1L << spaces) - 1;
+        }
+
+        minX = minY = 0;
+        maxX = width - 1;
+        maxY = height - 1;
+        cursor = 0;
+        size = spaces;
+    }
+
+    /**
+     * Checks if a space is marked for an update
+     * @param index  Index of the space
+     * @return  true if the space is marked
+     */
+    public boolean contains(int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Removes the marked space with the lowest index
+     * @return  the index of the space, or -1 if no spaces are marked
+     */
+    public int poll() {
+        if(size == 0) {
+            return -1;
+        }
+
+        // there is at least one bit left, so this stops before the end
+        while(bits[cursor] == 0) {
+            cursor++;
+        }
+
+        long word = bits[cursor];
+        int index = (cursor << 6) + Long.numberOfTrailingZeros(word);
+        bits[cursor] = word & (word - 1);
+        size--;
+        return index;
+    }
+
+    /**
+     * Removes all marked spaces
+     */
+    public void clear() {
+        if(size == 0) {
+            return;
+        }
+
+        // only the longs inside the rectangle can contain a mark
+        int last = (maxY * width + maxX) >>> 6;
+        for(int i = cursor; i <= last; i++) {
+            bits[i] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * Checks if no spaces are marked
+     * @return  true if no spaces are marked
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the number of marked spaces
+     * @return  the number of marked spaces
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the smallest x value of a marked space
+     * Only valid if the set is not empty
+     * @return  the left side of the changed rectangle
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Gets the smallest y value of a marked space
+     * Only valid if the set is not empty
+     * @return  the top of the changed rectangle
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Gets the largest x value of a marked space
+     * Only valid if the set is not empty
+     * @return  the right side of the changed rectangle
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Gets the largest y value of a marked space
+     * Only valid if the set is not empty
+     * @return  the bottom of the changed rectangle
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+}